@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.service.CacheService;
+
+import java.util.Collection;
+
+@RestController
+@RequestMapping("/caches")
+@RequiredArgsConstructor
+@Slf4j
+public class CacheController {
+    private final CacheService cacheService;
+
+    @GetMapping
+    public Collection<CacheStats> getCacheStats() {
+        return cacheService.getStats();
+    }
+}
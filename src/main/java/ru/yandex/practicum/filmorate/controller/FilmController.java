@@ -1,17 +1,23 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.enums.SortType;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
-import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -21,7 +27,12 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Slf4j
 public class FilmController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     public Optional<Film> addFilm(@Valid @RequestBody Film film) {
@@ -39,8 +50,38 @@ public class FilmController {
     }
 
     @GetMapping
-    public Collection<Film> getFilms() {
-        return filmService.getFilms();
+    public ResponseEntity<Collection<Film>> getFilms(@RequestParam(required = false) @PositiveOrZero Long after,
+                                                     @RequestParam(required = false) @Positive Integer limit) {
+        int pageLimit = filmService.getPageLimit(after, limit);
+        List<Film> films = filmService.getFilms(after, pageLimit);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!films.isEmpty() && films.size() == pageLimit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(films.get(films.size() - 1).getId()));
+        }
+        return response.body(films);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        filmService.acquireExport();
+        StreamingResponseBody body = outputStream -> {
+            try {
+                filmService.exportFilms(film -> {
+                    try {
+                        outputStream.write(objectMapper.writeValueAsBytes(film));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } finally {
+                filmService.releaseExport();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(body);
     }
 
     @PutMapping("/{id}/like/{userId}")
@@ -61,9 +102,25 @@ public class FilmController {
         return filmService.getTopByLikes(count, genreId, year);
     }
 
+    @GetMapping("/trending")
+    public Collection<Film> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                             @RequestParam(defaultValue = "10") @Positive Integer count) {
+        return filmService.getTrendingFilms(window, count);
+    }
+
+    @GetMapping("/suggest")
+    public List<Suggestion> getSuggestions(@RequestParam String prefix,
+                                           @RequestParam(defaultValue = "10") @Positive Integer count) {
+        return filmService.getSuggestions(prefix, count);
+    }
+
     @GetMapping("/common")
-    public Collection<Film> getCommonFilms(@NotNull @Positive @RequestParam Long userId,
-                                           @NotNull @Positive @RequestParam Long friendId) {
+    public Collection<Film> getCommonFilms(@Positive @RequestParam(required = false) Long userId,
+                                           @Positive @RequestParam(required = false) Long friendId,
+                                           @RequestParam(required = false) List<@Positive Long> userIds) {
+        if (userIds != null) {
+            return filmService.getCommonFilms(userIds);
+        }
         return filmService.getCommonFilms(userId, friendId);
     }
 
@@ -2,13 +2,19 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Optional;
 
@@ -19,13 +25,37 @@ import java.util.Optional;
 public class GenreController {
     private final FilmService filmService;
 
+    @Value("${filmorate.reference-data.max-age:1d}")
+    private Duration maxAge;
+
     @GetMapping()
-    public Collection<Genre> getAllGenres() {
-        return filmService.getAllGenres();
+    public ResponseEntity<Collection<Genre>> getAllGenres(WebRequest request) {
+        String eTag = filmService.getReferenceDataVersion();
+        if (request.checkNotModified(eTag)) {
+            return notModified();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAge))
+                .eTag(eTag)
+                .body(filmService.getAllGenres());
     }
 
     @GetMapping("/{id}")
-    public Optional<Genre> getGenre(@PathVariable int id) {
-        return filmService.getGenreById(id);
+    public ResponseEntity<Optional<Genre>> getGenre(@PathVariable int id, WebRequest request) {
+        Optional<Genre> found = filmService.getGenreById(id);
+        String eTag = filmService.getReferenceDataVersion();
+        if (request.checkNotModified(eTag)) {
+            return notModified();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAge))
+                .eTag(eTag)
+                .body(found);
+    }
+
+    private <T> ResponseEntity<T> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.maxAge(maxAge))
+                .build();
     }
 }
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.PrecomputeStats;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+
+@RestController
+@RequestMapping("/recommendations")
+@RequiredArgsConstructor
+@Slf4j
+public class RecommendationController {
+    private final RecommendationService recommendationService;
+
+    @GetMapping("/precompute")
+    public PrecomputeStats getPrecomputeStats() {
+        return recommendationService.getPrecomputeStats();
+    }
+}
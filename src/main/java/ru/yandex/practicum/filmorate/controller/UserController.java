@@ -2,15 +2,21 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.TasteCompatibility;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @RestController()
@@ -18,6 +24,8 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Slf4j
 public class UserController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final UserService userService;
 
     @PostMapping
@@ -31,8 +39,16 @@ public class UserController {
     }
 
     @GetMapping
-    public Collection<User> getUsers() {
-        return userService.getUsers();
+    public ResponseEntity<Collection<User>> getUsers(@RequestParam(required = false) @PositiveOrZero Long after,
+                                                     @RequestParam(required = false) @Positive Integer limit) {
+        int pageLimit = userService.getPageLimit(after, limit);
+        List<User> users = userService.getUsers(after, pageLimit);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!users.isEmpty() && users.size() == pageLimit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+        }
+        return response.body(users);
     }
 
     @GetMapping("/{id}")
@@ -66,6 +82,17 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<FriendSuggestion> getFriendSuggestions(@PathVariable Long id,
+                                                       @RequestParam(defaultValue = "10") @Positive Integer count) {
+        return userService.getFriendSuggestions(id, count);
+    }
+
+    @GetMapping("/{id}/compatibility/{otherId}")
+    public TasteCompatibility getCompatibility(@PathVariable Long id, @PathVariable Long otherId) {
+        return userService.getCompatibility(id, otherId);
+    }
+
     @DeleteMapping("/{userId}")
     public void deleteUserById(@PathVariable long userId) {
         userService.deleteUserById(userId);
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class PrecomputeStats {
+    boolean running;
+    Instant startedAt;
+    Instant finishedAt;
+    int totalUsers;
+    int processedUsers;
+    long writtenRows;
+    long durationMillis;
+
+    public double getProgress() {
+        return totalUsers == 0 ? 0 : (double) processedUsers / totalUsers;
+    }
+
+    public double getUsersPerSecond() {
+        return durationMillis == 0 ? 0 : processedUsers * 1000.0 / durationMillis;
+    }
+}
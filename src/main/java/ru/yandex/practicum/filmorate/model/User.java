@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.experimental.FieldDefaults;
 
 import javax.validation.constraints.*;
@@ -28,6 +30,12 @@ public class User {
     @PastOrPresent(message = "Дата рождения не может быть в будущем.")
     final LocalDate birthday;
     final Set<Long> friends;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @EqualsAndHashCode.Exclude
+    final Double compatibility;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @EqualsAndHashCode.Exclude
+    final Integer commonFilms;
 
     public void addFriend(Long userId) {
         friends.add(userId);
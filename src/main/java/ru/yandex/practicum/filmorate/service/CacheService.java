@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.BoundedCache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class CacheService {
+    private final List<BoundedCache<?, ?>> caches;
+
+    public Collection<CacheStats> getStats() {
+        return caches.stream()
+                .map(BoundedCache::getStats)
+                .collect(Collectors.toList());
+    }
+}
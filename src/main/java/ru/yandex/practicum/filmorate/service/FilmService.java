@@ -2,31 +2,52 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.enums.SortType;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSuggestIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmTrendingIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final Semaphore exportPermits;
+
+    @Value("${filmorate.pagination.default-limit:100}")
+    private int defaultPageLimit;
+    @Value("${filmorate.pagination.max-limit:1000}")
+    private int maxPageLimit;
+    @Value("${filmorate.pagination.unpaginated-cap:10000}")
+    private int unpaginatedCap;
 
     public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage) {
+                       @Qualifier("userDbStorage") UserStorage userStorage,
+                       @Value("${filmorate.export.max-concurrent:2}") int maxConcurrentExports) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.exportPermits = new Semaphore(maxConcurrentExports);
     }
 
     public Optional<Film> addFilm(Film film) {
@@ -48,8 +69,32 @@ public class FilmService {
         return foundFilm;
     }
 
-    public Collection<Film> getFilms() {
-        return filmStorage.getFilms();
+    public void acquireExport() {
+        if (!exportPermits.tryAcquire()) {
+            throw new ServiceUnavailableException("Слишком много одновременных выгрузок, повторите позже.");
+        }
+    }
+
+    public void releaseExport() {
+        exportPermits.release();
+    }
+
+    public void exportFilms(Consumer<Film> consumer) {
+        filmStorage.exportFilms(consumer);
+    }
+
+    public List<Film> getFilms(Long afterId, int limit) {
+        return filmStorage.getFilms(afterId == null ? 0 : afterId, limit);
+    }
+
+    public int getPageLimit(Long afterId, Integer limit) {
+        if (limit == null) {
+            return afterId == null ? unpaginatedCap : defaultPageLimit;
+        }
+        if (limit < 1) {
+            throw new ValidationException("Размер страницы должен быть положительным: " + limit);
+        }
+        return Math.min(limit, maxPageLimit);
     }
 
     public void addLike(Long id, Long userId, Integer mark) {
@@ -99,6 +144,10 @@ public class FilmService {
         return genre;
     }
 
+    public String getReferenceDataVersion() {
+        return filmStorage.getReferenceDataVersion();
+    }
+
     public Optional<Director> addDirector(Director director) {
         return filmStorage.addDirector(director);
     }
@@ -147,6 +196,23 @@ public class FilmService {
         return filmStorage.getPopularFilms(count, genreId, year);
     }
 
+    public Collection<Film> getTrendingFilms(String window, Integer count) {
+        if (count < 1) {
+            throw new ValidationException("Количество фильмов должно быть положительным: " + count);
+        }
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Некорректное окно: " + window + ". Пример: 24h, 90m, 7d.");
+        }
+        if (duration.isNegative() || duration.isZero() || duration.compareTo(FilmTrendingIndex.MAX_WINDOW) > 0) {
+            throw new ValidationException("Окно должно быть больше нуля и не больше "
+                    + FilmTrendingIndex.MAX_WINDOW.toDays() + " дней.");
+        }
+        return filmStorage.getTrendingFilms(duration, count);
+    }
+
     public Collection<Film> searchFilms(String query, List<String> by) {
         if (by.size() > 2 || (!by.contains("director") & !by.contains("title"))) {
             throw new ValidationException("Некорректный запрос. Можно искать только по режиссёру" +
@@ -155,17 +221,33 @@ public class FilmService {
         return filmStorage.searchFilms(query, by);
     }
 
+    public List<Suggestion> getSuggestions(String prefix, Integer count) {
+        if (count < 1 || count > FilmSuggestIndex.MAX_SUGGESTIONS) {
+            throw new ValidationException("Количество подсказок должно быть от 1 до " +
+                    FilmSuggestIndex.MAX_SUGGESTIONS + ".");
+        }
+        return filmStorage.getSuggestions(prefix, count);
+    }
+
     public Collection<Film> getCommonFilms(Long userId, Long otherId) {
-        if (userStorage.userNotExist(userId)) {
-            throw new NotFoundException("Пользователь с id " + userId + " не найден.");
+        if (userId == null || otherId == null) {
+            throw new ValidationException("Для получения общих фильмов необходимо указать userId и friendId " +
+                    "или список userIds.");
         }
-        if (userStorage.userNotExist(otherId)) {
-            throw new NotFoundException("Пользователь с id " + otherId + " не найден.");
+        return getCommonFilms(List.of(userId, otherId));
+    }
+
+    public Collection<Film> getCommonFilms(List<Long> userIds) {
+        Set<Long> distinctIds = new LinkedHashSet<>(userIds);
+        for (Long userId : distinctIds) {
+            if (userStorage.userNotExist(userId)) {
+                throw new NotFoundException("Пользователь с id " + userId + " не найден.");
+            }
         }
-        if (userId.equals(otherId)) {
+        if (distinctIds.size() < 2) {
             throw new ValidationException("Введён один и тот же Id. Для получения общих фильмов необходимо ввести" +
                     " Id друга. ");
         }
-        return filmStorage.getCommonFilms(userId, otherId);
+        return filmStorage.getCommonFilms(distinctIds);
     }
 }
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.PrecomputeStats;
+import ru.yandex.practicum.filmorate.storage.recommendation.RecommendationPrecomputeJob;
+
+@Service
+@RequiredArgsConstructor
+public class RecommendationService {
+    private final RecommendationPrecomputeJob precomputeJob;
+
+    public PrecomputeStats getPrecomputeStats() {
+        return precomputeJob.getStats();
+    }
+}
@@ -2,17 +2,26 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.TasteCompatibility;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.cache.RecommendationCache;
 import ru.yandex.practicum.filmorate.storage.event.EventManager;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -20,13 +29,23 @@ public class UserService {
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
     private final EventManager eventManager;
+    private final RecommendationCache recommendationCache;
+
+    @Value("${filmorate.pagination.default-limit:100}")
+    private int defaultPageLimit;
+    @Value("${filmorate.pagination.max-limit:1000}")
+    private int maxPageLimit;
+    @Value("${filmorate.pagination.unpaginated-cap:10000}")
+    private int unpaginatedCap;
 
     public UserService(@Qualifier("userDbStorage") UserStorage userStorage,
                        @Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("eventManager") EventManager eventManager) {
+                       @Qualifier("eventManager") EventManager eventManager,
+                       RecommendationCache recommendationCache) {
         this.userStorage = userStorage;
         this.filmStorage = filmStorage;
         this.eventManager = eventManager;
+        this.recommendationCache = recommendationCache;
     }
 
     public Optional<User> addUser(User user) {
@@ -48,8 +67,18 @@ public class UserService {
         return foundUser;
     }
 
-    public Collection<User> getUsers() {
-        return userStorage.getUsers();
+    public List<User> getUsers(Long afterId, int limit) {
+        return userStorage.getUsers(afterId == null ? 0 : afterId, limit);
+    }
+
+    public int getPageLimit(Long afterId, Integer limit) {
+        if (limit == null) {
+            return afterId == null ? unpaginatedCap : defaultPageLimit;
+        }
+        if (limit < 1) {
+            throw new ValidationException("Размер страницы должен быть положительным: " + limit);
+        }
+        return Math.min(limit, maxPageLimit);
     }
 
     public void addFriend(Long userId, Long friendId) {
@@ -86,13 +115,35 @@ public class UserService {
         if (userStorage.userNotExist(id)) {
             throw new NotFoundException("Нет такого пользователя");
         }
-        return userStorage.getFriends(id);
+        return userStorage.getFriends(id).stream()
+                .map(friend -> withCompatibility(friend, filmStorage.getCompatibility(id, friend.getId())))
+                .collect(Collectors.toList());
     }
 
     public Collection<User> getCommonFriends(Long id, Long otherId) {
         return userStorage.getCommonFriends(id, otherId);
     }
 
+    public List<FriendSuggestion> getFriendSuggestions(Long id, int count) {
+        if (userStorage.userNotExist(id)) {
+            throw new NotFoundException("Пользователь с id " + id + " не найден.");
+        }
+        return userStorage.getFriendSuggestions(id, Math.min(count, maxPageLimit));
+    }
+
+    public TasteCompatibility getCompatibility(Long id, Long otherId) {
+        if (userStorage.userNotExist(id)) {
+            throw new NotFoundException("Пользователь с id " + id + " не найден.");
+        }
+        if (userStorage.userNotExist(otherId)) {
+            throw new NotFoundException("Пользователь с id " + otherId + " не найден.");
+        }
+        if (id.equals(otherId)) {
+            throw new ValidationException("Для расчёта совместимости нужны два разных пользователя.");
+        }
+        return filmStorage.getCompatibility(id, otherId);
+    }
+
     public void deleteUserById(Long id) {
         if (userStorage.userNotExist(id)) {
             throw new NotFoundException("Нет такого пользователя");
@@ -104,7 +155,32 @@ public class UserService {
         if (userStorage.userNotExist(userId)) {
             throw new NotFoundException("Нет такого пользователя");
         }
-        return filmStorage.getFilmsRecommendation(userId);
+        RecommendationCache.Result result = recommendationCache.get(userId, this::loadRecommendation).orElseThrow();
+        if (recommendationCache.isStale(result)) {
+            recommendationCache.refreshInBackground(userId, result, this::computeRecommendation);
+        }
+        return filmStorage.getFilmsByIds(result.getFilmIds());
+    }
+
+    private Optional<RecommendationCache.Result> loadRecommendation(long userId) {
+        long computedAt = recommendationCache.now();
+        List<Long> filmIds = filmStorage.getPrecomputedRecommendation(userId);
+        if (filmIds.isEmpty()) {
+            return computeRecommendation(userId);
+        }
+        return Optional.of(new RecommendationCache.Result(filmIds, getDependencies(userId, filmIds), computedAt, true));
+    }
+
+    private Optional<RecommendationCache.Result> computeRecommendation(long userId) {
+        long computedAt = recommendationCache.now();
+        List<Long> filmIds = filmStorage.computeRecommendation(userId);
+        return Optional.of(new RecommendationCache.Result(filmIds, getDependencies(userId, filmIds), computedAt));
+    }
+
+    private Set<Long> getDependencies(long userId, List<Long> filmIds) {
+        Set<Long> dependencies = new HashSet<>(filmStorage.getRatedFilmIds(userId));
+        dependencies.addAll(filmIds);
+        return dependencies;
     }
 
     public Collection<Event> getEvents(Long id) {
@@ -113,4 +189,17 @@ public class UserService {
         }
         return eventManager.getEvents(id);
     }
+
+    private User withCompatibility(User friend, TasteCompatibility compatibility) {
+        return User.builder()
+                .id(friend.getId())
+                .email(friend.getEmail())
+                .login(friend.getLogin())
+                .name(friend.getName())
+                .birthday(friend.getBirthday())
+                .friends(friend.getFriends())
+                .compatibility(compatibility.getSimilarity())
+                .commonFilms(compatibility.getCommonFilms())
+                .build();
+    }
 }
@@ -0,0 +1,353 @@
+package ru.yandex.practicum.filmorate.storage.bitmap;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Сжатое множество id в духе Roaring bitmap. Id делится на старшую часть — ключ контейнера — и младшие
+ * 16 бит, которые хранятся в контейнере: отсортированным массивом char, пока значений не больше 4096,
+ * и битовой картой на 65536 бит, когда их больше. Ключи отсортированы, поэтому обход идёт по возрастанию id.
+ * Как и HashSet, не потокобезопасно.
+ */
+public class IdBitmap extends AbstractSet<Long> {
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private long[] keys = new long[0];
+    private Container[] containers = new Container[0];
+    private int containerCount;
+    private int size;
+
+    public IdBitmap() {
+    }
+
+    public IdBitmap(Collection<Long> ids) {
+        ids.forEach(this::add);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains((long) (Long) o);
+    }
+
+    public boolean contains(long id) {
+        int index = Arrays.binarySearch(keys, 0, containerCount, id >> 16);
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    @Override
+    public boolean add(Long id) {
+        return add((long) id);
+    }
+
+    public boolean add(long id) {
+        long key = id >> 16;
+        int index = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality;
+        containers[index] = container.add((char) id);
+        if (containers[index].cardinality == before) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove((long) (Long) o);
+    }
+
+    public boolean remove(long id) {
+        int index = Arrays.binarySearch(keys, 0, containerCount, id >> 16);
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        int before = container.cardinality;
+        containers[index] = container.remove((char) id);
+        if (containers[index].cardinality == before) {
+            return false;
+        }
+        size--;
+        if (containers[index].cardinality == 0) {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Long> filter) {
+        long[] matched = new long[size];
+        int count = 0;
+        for (Long id : this) {
+            if (filter.test(id)) {
+                matched[count++] = id;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            remove(matched[i]);
+        }
+        return count > 0;
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[0];
+        containers = new Container[0];
+        containerCount = 0;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Ids();
+    }
+
+    /**
+     * Оценка занимаемой памяти в байтах при сжатых указателях: заголовки объектов, массивы ключей и контейнеров.
+     */
+    public long getSizeInBytes() {
+        long bytes = 32 + 16 + 8L * keys.length + 16 + 4L * containers.length;
+        for (int i = 0; i < containerCount; i++) {
+            bytes += containers[i].getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    private void insertContainer(int index, long key, Container container) {
+        if (containerCount == keys.length) {
+            int capacity = Math.max(4, containerCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    private class Ids implements Iterator<Long> {
+        private int index;
+        private int from;
+        private int found = -1;
+        private long last;
+        private boolean removable;
+
+        @Override
+        public boolean hasNext() {
+            while (found < 0 && index < containerCount) {
+                found = containers[index].next(from);
+                if (found < 0) {
+                    index++;
+                    from = 0;
+                }
+            }
+            return found >= 0;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = keys[index] << 16 | found;
+            from = found + 1;
+            found = -1;
+            removable = true;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (!removable) {
+                throw new IllegalStateException();
+            }
+            removable = false;
+            IdBitmap.this.remove(last);
+            // hasNext() мог уже уйти в следующий контейнер, поэтому найденное значение сбрасывается,
+            // и поиск продолжается сразу после удалённого id.
+            found = -1;
+            int position = Arrays.binarySearch(keys, 0, containerCount, last >> 16);
+            if (position < 0) {
+                index = -position - 1;
+                from = 0;
+            } else {
+                index = position;
+                from = (char) last + 1;
+            }
+        }
+    }
+
+    private abstract static class Container {
+        int cardinality;
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        /**
+         * Наименьшее значение не меньше from или -1, если таких нет.
+         */
+        abstract int next(int from);
+
+        abstract long getSizeInBytes();
+    }
+
+    private static class ArrayContainer extends Container {
+        char[] values;
+
+        ArrayContainer() {
+            this(4);
+        }
+
+        ArrayContainer(int capacity) {
+            values = new char[capacity];
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int next(int from) {
+            if (from > Character.MAX_VALUE) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < cardinality ? values[index] : -1;
+        }
+
+        @Override
+        long getSizeInBytes() {
+            return 16 + 16 + 2L * values.length;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        final long[] words = new long[BITMAP_WORDS];
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            long word = words[value >>> 6];
+            long updated = word | 1L << value;
+            if (updated != word) {
+                words[value >>> 6] = updated;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long word = words[value >>> 6];
+            long updated = word & ~(1L << value);
+            if (updated == word) {
+                return this;
+            }
+            words[value >>> 6] = updated;
+            cardinality--;
+            // Обратно в массив с запасом, чтобы добавление и удаление на границе не переключали форму каждый раз.
+            return cardinality <= ARRAY_MAX / 2 ? toArray() : this;
+        }
+
+        @Override
+        int next(int from) {
+            if (from > Character.MAX_VALUE) {
+                return -1;
+            }
+            int index = from >>> 6;
+            long word = words[index] & -1L << from;
+            while (word == 0) {
+                if (++index == BITMAP_WORDS) {
+                    return -1;
+                }
+                word = words[index];
+            }
+            return index * 64 + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        long getSizeInBytes() {
+            return 16 + 16 + 8L * BITMAP_WORDS;
+        }
+
+        ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer(Math.max(4, cardinality));
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    array.values[array.cardinality++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+    }
+}
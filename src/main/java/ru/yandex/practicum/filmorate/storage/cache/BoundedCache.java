@@ -0,0 +1,175 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * LRU-кеш с ограничением по размеру и времени жизни записи.
+ * Значение, прочитанное до инвалидации, в кеш не попадает: загрузка запоминает поколение кеша
+ * и кладёт результат, только если за время чтения из базы ничего не инвалидировалось.
+ */
+public class BoundedCache<K, V> {
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private long generation;
+
+    public BoundedCache(String name, int maxSize, Duration ttl) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Optional<V> get(K key, Function<K, Optional<V>> loader) {
+        long loadGeneration;
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+                hits.increment();
+                return Optional.of(entry.value);
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.increment();
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        return load(key, loader, loadGeneration);
+    }
+
+    /**
+     * Перечитывает значение и заменяет запись, минуя проверку наличия в кеше.
+     */
+    public Optional<V> refresh(K key, Function<K, Optional<V>> loader) {
+        long loadGeneration;
+        synchronized (entries) {
+            loadGeneration = generation;
+        }
+        return load(key, loader, loadGeneration);
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(key);
+        }
+        invalidations.increment();
+        afterCommit(() -> {
+            synchronized (entries) {
+                generation++;
+                entries.remove(key);
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+        invalidations.increment();
+        afterCommit(() -> {
+            synchronized (entries) {
+                generation++;
+                entries.clear();
+            }
+        });
+    }
+
+    public void invalidateIf(BiPredicate<K, V> predicate) {
+        synchronized (entries) {
+            generation++;
+            entries.entrySet().removeIf(entry -> predicate.test(entry.getKey(), entry.getValue().value));
+        }
+        invalidations.increment();
+        afterCommit(() -> {
+            synchronized (entries) {
+                generation++;
+                entries.entrySet().removeIf(entry -> predicate.test(entry.getKey(), entry.getValue().value));
+            }
+        });
+    }
+
+    public void forEachValue(Consumer<V> action) {
+        synchronized (entries) {
+            entries.values().forEach(entry -> action.accept(entry.value));
+        }
+    }
+
+    public CacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return CacheStats.builder()
+                .name(name)
+                .size(size)
+                .maxSize(maxSize)
+                .hits(hits.sum())
+                .misses(misses.sum())
+                .evictions(evictions.sum())
+                .invalidations(invalidations.sum())
+                .build();
+    }
+
+    private Optional<V> load(K key, Function<K, Optional<V>> loader, long loadGeneration) {
+        Optional<V> value = loader.apply(key);
+        value.ifPresent(loaded -> {
+            synchronized (entries) {
+                if (generation == loadGeneration) {
+                    entries.put(key, new Entry<>(loaded, System.nanoTime() + ttlNanos));
+                }
+            }
+        });
+        return value;
+    }
+
+    protected void afterCommit(Runnable action) {
+        // Внутри транзакции другой поток ещё видит старую строку и может успеть положить её в кеш,
+        // поэтому после коммита запись сбрасывается повторно.
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сходство вкусов по паре пользователей, ключ не зависит от порядка id в паре. Изменение оценок пользователя
+ * отмечает время изменения: записи с его участием, посчитанные раньше, считаются устаревшими и пересчитываются
+ * при следующем чтении, без перебора всех пар пользователя.
+ */
+@Component
+public class CompatibilityCache extends BoundedCache<CompatibilityCache.Key, CompatibilityCache.Result> {
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<Long, Long> userChanges = new ConcurrentHashMap<>();
+
+    public CompatibilityCache(@Value("${filmorate.compatibility-cache.max-size:100000}") int maxSize,
+                              @Value("${filmorate.compatibility-cache.ttl:1h}") Duration ttl) {
+        super("compatibility", maxSize, ttl);
+    }
+
+    public long now() {
+        return clock.get();
+    }
+
+    public void touchUser(long userId) {
+        userChanges.put(userId, clock.incrementAndGet());
+    }
+
+    public boolean isStale(Key key, Result result) {
+        return userChanges.getOrDefault(key.getUserId(), 0L) > result.getComputedAt()
+                || userChanges.getOrDefault(key.getOtherId(), 0L) > result.getComputedAt();
+    }
+
+    public void removeUser(long userId) {
+        userChanges.remove(userId);
+        invalidateIf((key, result) -> key.getUserId() == userId || key.getOtherId() == userId);
+    }
+
+    @lombok.Value
+    public static class Key {
+        long userId;
+        long otherId;
+
+        public static Key of(long userId, long otherId) {
+            return userId <= otherId ? new Key(userId, otherId) : new Key(otherId, userId);
+        }
+    }
+
+    @Getter
+    public static class Result {
+        private final double similarity;
+        private final int commonFilms;
+        private final long computedAt;
+
+        public Result(double similarity, int commonFilms, long computedAt) {
+            this.similarity = similarity;
+            this.commonFilms = commonFilms;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+
+@Component
+public class FilmCache extends BoundedCache<Long, Film> {
+    public FilmCache(@Value("${filmorate.film-cache.max-size:10000}") int maxSize,
+                     @Value("${filmorate.film-cache.ttl:5m}") Duration ttl) {
+        super("films", maxSize, ttl);
+    }
+}
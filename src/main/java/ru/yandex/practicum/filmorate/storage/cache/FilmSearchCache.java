@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Результаты поиска по ключу (нормализованный запрос, поля поиска). Запись удаляется, только если изменилось
+ * название фильма или имя режиссёра, подходящее под запрос; оценка фильма из результата лишь помечает запись,
+ * и порядок пересчитывается при следующем чтении.
+ */
+@Component
+public class FilmSearchCache extends BoundedCache<FilmSearchCache.Key, FilmSearchCache.Result> {
+    public FilmSearchCache(@Value("${filmorate.search-cache.max-size:1000}") int maxSize,
+                           @Value("${filmorate.search-cache.ttl:10m}") Duration ttl) {
+        super("search", maxSize, ttl);
+    }
+
+    public void markStale(long filmId) {
+        Runnable mark = () -> forEachValue(result -> {
+            if (result.getRelevance().containsKey(filmId)) {
+                result.markStale();
+            }
+        });
+        mark.run();
+        afterCommit(mark);
+    }
+
+    public void invalidateMatching(Long filmId, Collection<String> titles, Collection<String> directorNames) {
+        invalidateIf((key, result) -> result.isFuzzy()
+                || (filmId != null && result.getRelevance().containsKey(filmId))
+                || (key.isByTitle() && key.matchesAny(titles))
+                || (key.isByDirector() && key.matchesAny(directorNames)));
+    }
+
+    @lombok.Value
+    public static class Key {
+        private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+        String query;
+        boolean byTitle;
+        boolean byDirector;
+
+        public static Key of(String query, List<String> by) {
+            return new Key(normalize(query), by.contains("title"), by.contains("director"));
+        }
+
+        /**
+         * Нижний регистр без пробелов по краям и с одиночными пробелами внутри.
+         */
+        static String normalize(String value) {
+            return WHITESPACE.matcher(value.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        }
+
+        boolean matchesAny(Collection<String> names) {
+            for (String name : names) {
+                if (name != null && normalize(name).contains(query)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Getter
+    public static class Result {
+        private final Map<Long, Double> relevance;
+        private final boolean fuzzy;
+        private volatile List<Long> ranking;
+        private volatile boolean stale = true;
+
+        public Result(Map<Long, Double> relevance, boolean fuzzy) {
+            this.relevance = Map.copyOf(relevance);
+            this.fuzzy = fuzzy;
+        }
+
+        public void markStale() {
+            stale = true;
+        }
+
+        public List<Long> getRanking() {
+            return stale ? null : ranking;
+        }
+
+        public void setRanking(List<Long> ranking) {
+            this.ranking = ranking;
+            stale = false;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Рекомендации по id пользователя. Своя оценка пользователя сбрасывает запись сразу. Оценки других
+ * пользователей только отмечают время изменения фильма: запись, в которой участвовал такой фильм
+ * (оценённый пользователем или рекомендованный), считается устаревшей, отдаётся как есть и пересчитывается в фоне.
+ * Оценка фильма, которого нет среди зависимостей, запись устаревшей не делает, хотя этот фильм мог бы теперь
+ * попасть в рекомендации: такие кандидаты появятся только после истечения ttl записи.
+ * Запись из ночного расчёта (precomputed) отдаётся сразу и всегда считается устаревшей, поэтому
+ * следующим шагом пересчитывается уже по текущим оценкам.
+ */
+@Component
+@Slf4j
+public class RecommendationCache extends BoundedCache<Long, RecommendationCache.Result> {
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<Long, Long> filmChanges = new ConcurrentHashMap<>();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recommendation-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RecommendationCache(@Value("${filmorate.recommendation-cache.max-size:10000}") int maxSize,
+                               @Value("${filmorate.recommendation-cache.ttl:30m}") Duration ttl) {
+        super("recommendations", maxSize, ttl);
+    }
+
+    public long now() {
+        return clock.get();
+    }
+
+    public void touchFilm(long filmId) {
+        filmChanges.put(filmId, clock.incrementAndGet());
+    }
+
+    public boolean isStale(Result result) {
+        if (result.isPrecomputed()) {
+            return true;
+        }
+        for (Long filmId : result.getDependencies()) {
+            if (filmChanges.getOrDefault(filmId, 0L) > result.getComputedAt()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ставит пересчёт в очередь, если для этой записи он ещё не запущен.
+     */
+    public void refreshInBackground(long userId, Result stale, Function<Long, Optional<Result>> loader) {
+        if (!stale.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    refresh(userId, loader);
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось пересчитать рекомендации пользователя с id " + userId, e);
+                } finally {
+                    // Если пересчёт отброшен из-за инвалидации, устаревшая запись остаётся в кеше
+                    // и должна снова запускать пересчёт.
+                    stale.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stale.refreshing.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    @Getter
+    public static class Result {
+        private final List<Long> filmIds;
+        private final Collection<Long> dependencies;
+        private final long computedAt;
+        private final boolean precomputed;
+        @Getter(AccessLevel.NONE)
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        public Result(List<Long> filmIds, Collection<Long> dependencies, long computedAt) {
+            this(filmIds, dependencies, computedAt, false);
+        }
+
+        public Result(List<Long> filmIds, Collection<Long> dependencies, long computedAt, boolean precomputed) {
+            this.filmIds = List.copyOf(filmIds);
+            this.dependencies = List.copyOf(dependencies);
+            this.computedAt = computedAt;
+            this.precomputed = precomputed;
+        }
+    }
+}
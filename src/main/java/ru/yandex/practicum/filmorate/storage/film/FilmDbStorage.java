@@ -2,27 +2,85 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.model.enums.SortType;
+import ru.yandex.practicum.filmorate.storage.bitmap.IdBitmap;
+import ru.yandex.practicum.filmorate.storage.cache.CompatibilityCache;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.FilmSearchCache;
+import ru.yandex.practicum.filmorate.storage.cache.RecommendationCache;
+import ru.yandex.practicum.filmorate.storage.recommendation.FilmCooccurrenceMatrix;
+import ru.yandex.practicum.filmorate.storage.recommendation.ItemBasedRecommender;
+import ru.yandex.practicum.filmorate.storage.recommendation.MatrixFactorizationRecommender;
+import ru.yandex.practicum.filmorate.storage.recommendation.RecommendationStrategy;
+import ru.yandex.practicum.filmorate.storage.recommendation.UserLikeLshIndex;
+import ru.yandex.practicum.filmorate.storage.recommendation.UserSimilarity;
 import ru.yandex.practicum.filmorate.storage.event.EventManager;
 
+import java.sql.Array;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Component("filmDbStorage")
 @RequiredArgsConstructor
 @Slf4j
 public class FilmDbStorage implements FilmStorage {
+    private static final int HYDRATION_BATCH_SIZE = 500;
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final int EXPORT_BATCH_SIZE = 100;
+    private static final int USER_STRIPES = 64;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final EventManager eventManager;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmTrendingIndex trendingIndex;
+    private final ReferenceDataSnapshot referenceData;
+    private final FilmCache filmCache;
+    private final FilmSearchIndex searchIndex;
+    private final FilmSuggestIndex suggestIndex;
+    private final FilmSearchCache searchCache;
+    private final ItemBasedRecommender itemBasedRecommender;
+    private final FilmCooccurrenceMatrix cooccurrenceMatrix;
+    private final UserLikeLshIndex userLikeIndex;
+    private final MatrixFactorizationRecommender matrixFactorizationRecommender;
+    private final RecommendationCache recommendationCache;
+    private final LikedFilmsIndex likedFilmsIndex;
+    private final CompatibilityCache compatibilityCache;
+    private final Lock[] userStripes = createUserStripes();
+
+    @Value("${filmorate.film.hydration:BATCH}")
+    private FilmHydrationMode hydrationMode;
+    @Value("${filmorate.film.popularity-index.enabled:true}")
+    private boolean popularityIndexEnabled;
+    @Value("${filmorate.film.search-index.enabled:true}")
+    private boolean searchIndexEnabled;
+    @Value("${filmorate.recommendation.strategy:ITEM_BASED}")
+    private RecommendationStrategy recommendationStrategy;
+    @Value("${filmorate.recommendation.max-results:20}")
+    private int maxRecommendations;
+    @Value("${filmorate.recommendation.lsh.similar-users:20}")
+    private int similarUserCount;
 
     @Override
     public Optional<Film> addFilm(Film film) {
@@ -33,6 +91,7 @@ public class FilmDbStorage implements FilmStorage {
                 .usingGeneratedKeyColumns("film_id");
 
         long filmId = simpleJdbcInsert.executeAndReturnKey(filmMap).longValue();
+        jdbcTemplate.update("insert into film_rating(film_id) values(?)", filmId);
 
         Set<Genre> genres = film.getGenres();
         if (genres != null) {
@@ -64,6 +123,9 @@ public class FilmDbStorage implements FilmStorage {
                 .likes(film.getLikes())
                 .build();
 
+        popularityIndex.putFilm(filmId, newFilm.getReleaseDate().getYear(), getGenreIds(genres));
+        searchIndex.putFilm(filmId, newFilm.getName(), getDirectorIds(directors));
+
         log.info("Добавлен фильм: " + newFilm.getName());
         return Optional.of(newFilm);
     }
@@ -117,13 +179,17 @@ public class FilmDbStorage implements FilmStorage {
                 .likes(film.getLikes())
                 .build();
 
+        popularityIndex.putFilm(film.getId(), newFilm.getReleaseDate().getYear(), getGenreIds(genres));
+        searchIndex.putFilm(film.getId(), newFilm.getName(), getDirectorIds(directors));
+        filmCache.invalidate(film.getId());
+
         log.info("Обновлен фильм: " + newFilm.getName());
         return Optional.of(newFilm);
     }
 
     @Override
     public Optional<Film> getFilm(Long id) {
-        return getFilmById(id);
+        return filmCache.get(id, this::getFilmById);
     }
 
     @Override
@@ -135,52 +201,142 @@ public class FilmDbStorage implements FilmStorage {
                         "   films.description, " +
                         "   films.release_date, " +
                         "   films.duration, " +
-                        "   films.mpa_id, " +
-                        "   mpa.name as mpa_name, " +
-                        "   mpa.description as mpa_description " +
+                        "   films.mpa_id " +
+                        hydrationColumns("films") +
+                        "from films ";
+        return hydrateFilms(jdbcTemplate.query(sqlQuery, this::mapRowToFilm));
+    }
+
+    @Override
+    public List<Film> getFilms(long afterId, int limit) {
+        String sqlQuery =
+                "select " +
+                        "   films.film_id, " +
+                        "   films.name, " +
+                        "   films.description, " +
+                        "   films.release_date, " +
+                        "   films.duration, " +
+                        "   films.mpa_id " +
+                        hydrationColumns("films") +
+                        "from films " +
+                        "where films.film_id > ? " +
+                        "order by films.film_id " +
+                        "limit ?";
+        return hydrateFilms(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, afterId, limit));
+    }
+
+    /**
+     * Выгружает фильмы порциями по EXPORT_BATCH_SIZE. Транзакция только на чтение нужна, чтобы догрузка
+     * жанров, режиссёров и лайков шла через то же соединение, что и курсор: выгрузка держит его всё время,
+     * пока клиент читает ответ, поэтому число одновременных выгрузок ограничивает FilmService.
+     * Встроенная H2 без LAZY_QUERY_EXECUTION всё равно материализует результат целиком, так что постоянный
+     * расход памяти обеспечивается только на СУБД с настоящим серверным курсором.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportFilms(Consumer<Film> consumer) {
+        String sqlQuery =
+                "select " +
+                        "   films.film_id, " +
+                        "   films.name, " +
+                        "   films.description, " +
+                        "   films.release_date, " +
+                        "   films.duration, " +
+                        "   films.mpa_id " +
+                        hydrationColumns("films") +
                         "from films " +
-                        "   left join mpa " +
-                        "   on films.mpa_id = mpa.mpa_id";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm);
+                        "order by films.film_id";
+
+        List<Film> batch = new ArrayList<>(EXPORT_BATCH_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sqlQuery,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(EXPORT_FETCH_SIZE);
+            return statement;
+        }, resultSet -> {
+            batch.add(mapRowToFilm(resultSet, resultSet.getRow()));
+            if (batch.size() == EXPORT_BATCH_SIZE) {
+                hydrateFilms(batch).forEach(consumer);
+                batch.clear();
+            }
+        });
+        hydrateFilms(batch).forEach(consumer);
     }
 
     public Collection<Film> searchFilms(String query, List<String> by) {
-        String sqlQuery = "select " +
-                "   films.film_id, " +
-                "   films.name, " +
-                "   films.description, " +
-                "   films.release_date, " +
-                "   films.duration, " +
-                "   films.mpa_id, " +
-                "   film_directors.director_id as director_id, " +
-                "   directors.name as director_name, " +
-                "   mpa.name as mpa_name, " +
-                "   mpa.description as mpa_description " +
+        FilmSearchCache.Key key = FilmSearchCache.Key.of(query, by);
+        FilmSearchCache.Result result = searchCache.get(key, this::findSearchResult).orElseThrow();
+
+        List<Long> ranking = result.getRanking();
+        if (ranking == null) {
+            ranking = rankSearchResult(result.getRelevance());
+            result.setRanking(ranking);
+        }
+        return getFilmsByIds(ranking);
+    }
+
+    private Optional<FilmSearchCache.Result> findSearchResult(FilmSearchCache.Key key) {
+        if (!searchIndexEnabled) {
+            return Optional.of(new FilmSearchCache.Result(searchFilmIdsInDatabase(key), false));
+        }
+        Map<Long, Double> relevance = searchIndex.search(key.getQuery(), key.isByTitle(), key.isByDirector());
+        boolean fuzzy = relevance.isEmpty() || relevance.values().stream()
+                .anyMatch(value -> value < FilmSearchIndex.SUBSTRING_MATCH);
+        return Optional.of(new FilmSearchCache.Result(relevance, fuzzy));
+    }
+
+    private List<Long> rankSearchResult(Map<Long, Double> relevance) {
+        if (relevance.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "select films.film_id " +
                 "from films " +
-                "   left join mpa " +
-                "   on films.mpa_id = mpa.mpa_id" +
-                "   left join film_directors " +
-                "   on films.film_id = film_directors.film_id" +
-                "   left join directors " +
-                "   on film_directors.director_id = directors.director_id " +
-                "   left join film_likes    " +
-                "   on films.film_id = film_likes.film_id ";
-        boolean isSearchByDirector = false;
-        if (by.contains("director")) {
-            sqlQuery = sqlQuery + " where lower(directors.name) like lower('%" + query + "%')";
-            isSearchByDirector = true;
-        }
-        if (by.contains("title")) {
-            if (isSearchByDirector) {
-                sqlQuery = sqlQuery + " or ";
-            } else {
-                sqlQuery = sqlQuery + " where ";
-            }
-            sqlQuery = sqlQuery + "lower(films.name) like lower('%" + query + "%')";
+                "   left join film_rating " +
+                "   on films.film_id = film_rating.film_id " +
+                "where films.film_id in (:ids) " +
+                "order by film_rating.avg_mark desc nulls last, film_rating.mark_count desc, films.film_id";
+        List<Long> ids = namedParameterJdbcTemplate.queryForList(sqlQuery,
+                new MapSqlParameterSource("ids", relevance.keySet()), Long.class);
+        ids.sort(Comparator.comparing(relevance::get).reversed());
+        return ids;
+    }
+
+    @Override
+    public List<Suggestion> getSuggestions(String prefix, int count) {
+        return suggestIndex.suggest(prefix, count);
+    }
+
+    /**
+     * Поиск без индекса в памяти: кандидаты выбираются по LIKE, а релевантность считается по найденным
+     * названиям так же, как в FilmSearchIndex.
+     */
+    private Map<Long, Double> searchFilmIdsInDatabase(FilmSearchCache.Key key) {
+        String query = key.getQuery().toLowerCase(Locale.ROOT);
+        Map<Long, Double> relevance = new HashMap<>();
+        String pattern = "%" + escapeLike(query) + "%";
+        if (key.isByTitle()) {
+            String sqlQuery = "select film_id, name from films where lower(name) like ? escape '\\'";
+            jdbcTemplate.query(sqlQuery, resultSet -> {
+                relevance.merge(resultSet.getLong("film_id"), FilmSearchIndex.getRelevance(
+                        resultSet.getString("name").toLowerCase(Locale.ROOT), query), Math::max);
+            }, pattern);
+        }
+        if (key.isByDirector()) {
+            String sqlQuery = "select film_directors.film_id, directors.name " +
+                    "from directors " +
+                    "   inner join film_directors " +
+                    "   on directors.director_id = film_directors.director_id " +
+                    "where lower(directors.name) like ? escape '\\'";
+            jdbcTemplate.query(sqlQuery, resultSet -> {
+                relevance.merge(resultSet.getLong("film_id"), FilmSearchIndex.getRelevance(
+                        resultSet.getString("name").toLowerCase(Locale.ROOT), query), Math::max);
+            }, pattern);
         }
-        sqlQuery = sqlQuery + "   group by films.film_id    " +
-                "order by avg(film_likes.mark) desc, count(film_likes.mark) desc;";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm);
+        return relevance;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     @Override
@@ -196,9 +352,36 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    @Transactional
     public void addLike(Long id, Long userId, Integer mark) {
+        lockFilmRating(id);
+        Optional<Integer> oldMark = getMark(id, userId);
+
         String sqlQuery = "merge into film_likes(film_id, user_id, mark) key(film_id, user_id) values(?, ?, ?)";
         jdbcTemplate.update(sqlQuery, id, userId, mark);
+        filmCache.invalidate(id);
+        searchCache.markStale(id);
+
+        if (oldMark.isPresent()) {
+            jdbcTemplate.update("update film_rating set mark_sum = mark_sum + ? where film_id = ?",
+                    mark - oldMark.get(), id);
+        } else {
+            jdbcTemplate.update("update film_rating set mark_sum = mark_sum + ?, mark_count = mark_count + 1 " +
+                    "where film_id = ?", mark, id);
+        }
+        afterCommit(() -> {
+            if (oldMark.isPresent()) {
+                popularityIndex.applyMark(id, mark - oldMark.get(), 0);
+            } else {
+                popularityIndex.applyMark(id, mark, 1);
+                trendingIndex.registerLike(id, userId);
+            }
+            applyMark(id, userId, oldMark.orElse(null), mark);
+        });
+        compatibilityCache.touchUser(userId);
+        recommendationCache.invalidate(userId);
+        recommendationCache.touchFilm(id);
+        jdbcTemplate.update("delete from user_recommendations where user_id = ?", userId);
 
         eventManager.updateEvents(userId, EventType.LIKE, Operation.ADD, id);
 
@@ -206,130 +389,331 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    @Transactional
     public void removeLike(Long id, Long userId) {
+        lockFilmRating(id);
+        Optional<Integer> oldMark = getMark(id, userId);
+
         String sqlQuery = "delete from film_likes where film_id = ? and user_id = ?";
         jdbcTemplate.update(sqlQuery, id, userId);
+        filmCache.invalidate(id);
+        searchCache.markStale(id);
+
+        oldMark.ifPresent(mark -> jdbcTemplate.update("update film_rating " +
+                "set mark_sum = mark_sum - ?, mark_count = mark_count - 1 where film_id = ?", mark, id));
+        afterCommit(() -> {
+            oldMark.ifPresent(mark -> {
+                popularityIndex.applyMark(id, -mark, -1);
+                trendingIndex.unregisterLike(id, userId);
+            });
+            applyMark(id, userId, oldMark.orElse(null), null);
+        });
+        compatibilityCache.touchUser(userId);
+        recommendationCache.invalidate(userId);
+        recommendationCache.touchFilm(id);
+        jdbcTemplate.update("delete from user_recommendations where user_id = ?", userId);
 
         eventManager.updateEvents(userId, EventType.LIKE, Operation.REMOVE, id);
 
         log.info("У фильма с id " + id + " удален лайк пользователя с id " + userId);
     }
 
+    /**
+     * Обновляет модель выбранной стратегии рекомендаций и индекс оценённых фильмов. Матрица совместных оценок
+     * берёт положительно оценённые фильмы пользователя из индекса, поэтому чтение индекса, правка матрицы
+     * и запись новой оценки идут под блокировкой пользователя: иначе одновременные оценки одного
+     * пользователя разным фильмам не увидят друг друга и счётчик пары потеряется.
+     */
+    private void applyMark(Long id, Long userId, Integer oldMark, Integer newMark) {
+        Lock stripe = userStripes[(int) ((userId ^ (userId >>> 32)) & (USER_STRIPES - 1))];
+        stripe.lock();
+        try {
+            switch (recommendationStrategy) {
+                case ITEM_BASED:
+                    if (newMark == null) {
+                        itemBasedRecommender.removeMark(id, userId);
+                    } else {
+                        itemBasedRecommender.putMark(id, userId, newMark);
+                    }
+                    break;
+                case COOCCURRENCE:
+                    if (FilmCooccurrenceMatrix.isPositive(oldMark) != FilmCooccurrenceMatrix.isPositive(newMark)) {
+                        cooccurrenceMatrix.applyMark(id, oldMark, newMark,
+                                likedFilmsIndex.getFilmsWithMarkAtLeast(userId, FilmCooccurrenceMatrix.MIN_POSITIVE_MARK));
+                    }
+                    break;
+                case USER_BASED:
+                    userLikeIndex.applyMark(id, userId, oldMark, newMark);
+                    break;
+                default:
+                    break;
+            }
+            if (newMark == null) {
+                likedFilmsIndex.removeLike(id, userId);
+            } else {
+                likedFilmsIndex.addLike(id, userId, newMark);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Индексы и модели рекомендаций живут в памяти процесса и не откатываются вместе с транзакцией, поэтому
+     * оценка попадает в них только после коммита. Вне транзакции действие выполняется сразу.
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static Lock[] createUserStripes() {
+        Lock[] locks = new Lock[USER_STRIPES];
+        for (int i = 0; i < USER_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
     @Override
     public Collection<Film> getPopularFilms(Integer count, Integer genre, Integer year) {
-//        String sqlQuery = "" +
-//                "select top ? distinct " +
-//                "   films.film_id, avg(film_likes.mark), count(film_likes.user_id), " +
-//                "   films.name, " +
-//                "   films.description, " +
-//                "   films.release_date, " +
-//                "   films.duration, " +
-//                "   films.mpa_id, " +
-//                "   mpa.name as mpa_name, " +
-//                "   mpa.description as mpa_description " +
-//                "from films " +
-//                "   left join mpa " +
-//                "   on films.mpa_id = mpa.mpa_id " +
-//                "   left join film_genres " +
-//                "   on film_genres.film_id = films.film_id " +
-//
-//                " left join film_likes on films.film_id = film_likes.film_id" +
-//
-//                "where " +
-//                "  ((? = 0) or (film_genres.genre_id = ?)) " +
-//                "  AND " +
-//                "  ((? = 0) or (year(release_date) = ?)) " +
-////                "  AND " +
-////                "films.film_id in (" +
-////                "   select top ? " +
-////                "       films.film_id, " +
-////                        " count(film_likes.user_id), avg(film_likes.mark)" +
-////                "   from films " +
-////                "       left join film_likes " +
-////                "       on films.film_id = film_likes.film_id " +
-//                "   group by films.film_id " +
-//                "   order by avg(film_likes.mark) desc, count(film_likes.user_id) desc " +
-//                ")";
-
-
-        String sqlQuery = "select distinct f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id," +
-                "  mpa.name as mpa_name, mpa.description as mpa_description," +
-                " count(l.user_id) as count_users, avg(l.mark) as avg_likes" +
-                " from films as f left join mpa on f.mpa_id = mpa.mpa_id" +
-                "   left join film_genres on film_genres.film_id = f.film_id " +
-                " left join film_likes as l on f.film_id = l.film_id" +
-                " where " +
-                "  ((? = 0) or (film_genres.genre_id = ?)) " +
-                "  AND " +
-                "  ((? = 0) or (year(release_date) = ?)) " +
-                "  AND " +
-                "f.film_id in ( select top ? films.film_id from films left join film_likes on films.film_id = film_likes.film_id group by films.film_id order by avg(film_likes.mark) desc, count(film_likes.user_id) desc) " +
-                " group by f.film_id" +
-                " order by avg_likes desc, count_users desc";
-
-        //       String sqlQuery = "" +
-        //                "select distinct " +
-        //                "   films.film_id, " +
-        //                "   films.name, " +
-        //                "   films.description, " +
-        //                "   films.release_date, " +
-        //                "   films.duration, " +
-        //                "   films.mpa_id, " +
-        //                "   mpa.name as mpa_name, " +
-        //                "   mpa.description as mpa_description " +
-        //                "from films " +
-        //                "   left join mpa " +
-        //                "   on films.mpa_id = mpa.mpa_id " +
-        //                "   left join film_genres " +
-        //                "   on film_genres.film_id = films.film_id " +
-        //                "where " +
-        //                "  ((? = 0) or (film_genres.genre_id = ?)) " +
-        //                "  AND " +
-        //                "  ((? = 0) or (year(release_date) = ?)) " +
-        //                "  AND " +
-        //                "films.film_id in (" +
-        //                "   select top ? " +
-        //                "       films.film_id, " +
-        //                        " count(film_likes.user_id), avg(film_likes.mark)" +
-        //                "   from films " +
-        //                "       left join film_likes " +
-        //                "       on films.film_id = film_likes.film_id " +
-        //                "   group by films.film_id " +
-        //                "   order by avg(film_likes.mark) desc, count(film_likes.user_id) desc " +
-        //                ")";
-
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, genre, genre, year, year, count);
+        if (popularityIndexEnabled) {
+            return getFilmsByIds(popularityIndex.getTop(count, genre, year));
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("count", count);
+        StringBuilder sqlQuery = new StringBuilder("select " +
+                "   films.film_id, " +
+                "   films.name, " +
+                "   films.description, " +
+                "   films.release_date, " +
+                "   films.duration, " +
+                "   films.mpa_id " +
+                hydrationColumns("films") +
+                "from film_rating " +
+                "   inner join films " +
+                "   on film_rating.film_id = films.film_id ");
+        if (genre != 0) {
+            sqlQuery.append("   inner join film_genres " +
+                    "   on film_genres.film_id = films.film_id " +
+                    "   and film_genres.genre_id = :genre ");
+            parameters.addValue("genre", genre);
+        }
+        sqlQuery.append("where 1 = 1 ");
+        if (year != 0) {
+            sqlQuery.append("and films.release_date >= :yearStart and films.release_date < :yearEnd ");
+            parameters.addValue("yearStart", LocalDate.of(year, 1, 1));
+            parameters.addValue("yearEnd", LocalDate.of(year + 1, 1, 1));
+        }
+        sqlQuery.append("order by film_rating.avg_mark desc, film_rating.mark_count desc, films.film_id " +
+                "limit :count");
+
+        return hydrateFilms(namedParameterJdbcTemplate.query(sqlQuery.toString(), parameters, this::mapRowToFilm));
+    }
+
+    @Override
+    public Collection<Film> getTrendingFilms(Duration window, int count) {
+        return getFilmsByIds(trendingIndex.getTop(window, count));
     }
 
     @Override
     public Collection<Mpa> getAllMpa() {
-        String sqlQuery = "select * from mpa";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToMpa);
+        return referenceData.getAllMpa();
     }
 
     @Override
     public Optional<Mpa> getMpaById(int id) {
-        String sqlQuery = "select * from mpa where mpa_id = ?";
-        Collection<Mpa> mpa = jdbcTemplate.query(sqlQuery, this::mapRowToMpa, id);
-        return mpa.stream().findFirst();
+        return referenceData.getMpaById(id);
     }
 
     @Override
     public Collection<Genre> getAllGenres() {
-        String sqlQuery = "select * from genres";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToGenre);
+        return referenceData.getAllGenres();
     }
 
     @Override
     public Optional<Genre> getGenreById(int id) {
-        String sqlQuery = "select * from genres where genre_id = ?";
-        Collection<Genre> genres = jdbcTemplate.query(sqlQuery, this::mapRowToGenre, id);
-        return genres.stream().findFirst();
+        return referenceData.getGenreById(id);
+    }
+
+    @Override
+    public String getReferenceDataVersion() {
+        return referenceData.getVersion();
     }
 
     @Override
     public void deleteFilmById(Long id) {
         jdbcTemplate.update("delete from films where film_id = ?", id);
+        filmCache.invalidate(id);
+        popularityIndex.removeFilm(id);
+        trendingIndex.removeFilm(id);
+        searchIndex.removeFilm(id);
+        itemBasedRecommender.removeFilm(id);
+        cooccurrenceMatrix.removeFilm(id);
+        userLikeIndex.removeFilm(id);
+        likedFilmsIndex.removeFilm(id);
+        compatibilityCache.invalidateAll();
+        recommendationCache.touchFilm(id);
+    }
+
+    /**
+     * Снимает все оценки пользователя перед его удалением: агрегаты film_rating правятся под блокировкой
+     * строки каждого фильма, как при обычном удалении лайка, а индексы и модели рекомендаций забывают
+     * пользователя после коммита.
+     */
+    @Transactional
+    public void removeLikesOfUser(Long userId) {
+        Map<Long, Integer> marks = new TreeMap<>();
+        jdbcTemplate.query("select film_id, mark from film_likes where user_id = ?", resultSet -> {
+            marks.put(resultSet.getLong("film_id"), resultSet.getInt("mark"));
+        }, userId);
+
+        marks.forEach((filmId, mark) -> {
+            lockFilmRating(filmId);
+            jdbcTemplate.update("update film_rating " +
+                    "set mark_sum = mark_sum - ?, mark_count = mark_count - 1 where film_id = ?", mark, filmId);
+        });
+        jdbcTemplate.update("delete from film_likes where user_id = ?", userId);
+
+        List<Long> positiveFilms = marks.entrySet().stream()
+                .filter(entry -> FilmCooccurrenceMatrix.isPositive(entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        afterCommit(() -> {
+            marks.forEach((filmId, mark) -> popularityIndex.applyMark(filmId, -mark, -1));
+            switch (recommendationStrategy) {
+                case ITEM_BASED:
+                    itemBasedRecommender.removeUser(userId);
+                    break;
+                case COOCCURRENCE:
+                    cooccurrenceMatrix.removeUser(positiveFilms);
+                    break;
+                case USER_BASED:
+                    userLikeIndex.removeUser(userId);
+                    break;
+                default:
+                    break;
+            }
+            likedFilmsIndex.removeUser(userId);
+            trendingIndex.removeUser(userId);
+        });
+        marks.keySet().forEach(filmId -> {
+            filmCache.invalidate(filmId);
+            searchCache.markStale(filmId);
+            recommendationCache.touchFilm(filmId);
+        });
+        compatibilityCache.removeUser(userId);
+        recommendationCache.invalidate(userId);
+    }
+
+    public List<Long> getStaleFilmRatingIds() {
+        String sqlQuery = "select actual.film_id " +
+                "from ( " +
+                "   select " +
+                "       films.film_id, " +
+                "       coalesce(sum(film_likes.mark), 0) as mark_sum, " +
+                "       count(film_likes.mark) as mark_count " +
+                "   from films " +
+                "       left join film_likes " +
+                "       on films.film_id = film_likes.film_id " +
+                "   group by films.film_id " +
+                ") as actual " +
+                "   left join film_rating " +
+                "   on actual.film_id = film_rating.film_id " +
+                "where film_rating.film_id is null " +
+                "   or film_rating.mark_sum <> actual.mark_sum " +
+                "   or film_rating.mark_count <> actual.mark_count " +
+                "order by actual.film_id";
+        return jdbcTemplate.queryForList(sqlQuery, Long.class);
+    }
+
+    public int countStaleFilmRatings() {
+        return getStaleFilmRatingIds().size();
+    }
+
+    /**
+     * Пересчитывает агрегат фильма по film_likes под той же блокировкой строки film_rating, что и оценки,
+     * поэтому одновременная оценка не перезаписывается устаревшей суммой. Индекс популярности получает
+     * ту же поправку после коммита.
+     */
+    @Transactional
+    public boolean rebuildFilmRating(Long filmId) {
+        if (filmNotExist(filmId)) {
+            return false;
+        }
+        lockFilmRating(filmId);
+        Map<String, Object> stored = jdbcTemplate.queryForMap(
+                "select mark_sum, mark_count from film_rating where film_id = ?", filmId);
+        Map<String, Object> actual = jdbcTemplate.queryForMap("select " +
+                "   coalesce(sum(mark), 0) as mark_sum, " +
+                "   count(mark) as mark_count " +
+                "from film_likes " +
+                "where film_id = ?", filmId);
+        long markDelta = ((Number) actual.get("mark_sum")).longValue() - ((Number) stored.get("mark_sum")).longValue();
+        int countDelta = ((Number) actual.get("mark_count")).intValue() - ((Number) stored.get("mark_count")).intValue();
+        if (markDelta == 0 && countDelta == 0) {
+            return false;
+        }
+        jdbcTemplate.update("update film_rating set mark_sum = mark_sum + ?, mark_count = mark_count + ? " +
+                "where film_id = ?", markDelta, countDelta, filmId);
+        afterCommit(() -> popularityIndex.applyMark(filmId, markDelta, countDelta));
+        return true;
+    }
+
+    private void lockFilmRating(Long filmId) {
+        String sqlQuery = "select film_id from film_rating where film_id = ? for update";
+        if (jdbcTemplate.queryForList(sqlQuery, Long.class, filmId).isEmpty()) {
+            jdbcTemplate.update("merge into film_rating(film_id) key(film_id) values(?)", filmId);
+            jdbcTemplate.queryForList(sqlQuery, Long.class, filmId);
+        }
+    }
+
+    private Optional<Integer> getMark(Long filmId, Long userId) {
+        String sqlQuery = "select mark from film_likes where film_id = ? and user_id = ?";
+        return jdbcTemplate.queryForList(sqlQuery, Integer.class, filmId, userId).stream().findFirst();
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sqlQuery =
+                "select " +
+                        "   films.film_id, " +
+                        "   films.name, " +
+                        "   films.description, " +
+                        "   films.release_date, " +
+                        "   films.duration, " +
+                        "   films.mpa_id " +
+                        hydrationColumns("films") +
+                        "from films " +
+                        "where films.film_id in (:ids)";
+
+        Map<Long, Film> filmsById = new HashMap<>();
+        hydrateFilms(namedParameterJdbcTemplate.query(sqlQuery, new MapSqlParameterSource("ids", ids),
+                this::mapRowToFilm)).forEach(film -> filmsById.put(film.getId(), film));
+
+        return ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Integer> getGenreIds(Set<Genre> genres) {
+        return genres.stream().map(Genre::getId).collect(Collectors.toList());
+    }
+
+    private List<Long> getDirectorIds(Set<Director> directors) {
+        return directors.stream().map(Director::getId).collect(Collectors.toList());
     }
 
     private void addGenreToFilm(Long filmId, int genreId) {
@@ -340,15 +724,15 @@ public class FilmDbStorage implements FilmStorage {
     public Set<Genre> getFilmGenres(Long id) {
         String sqlQuery =
                 "select " +
-                        "   film_genres.genre_id, " +
-                        "   genres.name " +
+                        "   film_genres.genre_id " +
                         "from film_genres " +
-                        "   left join genres " +
-                        "   on film_genres.genre_id = genres.genre_id " +
-                        "where film_genres.film_id = ? " +
-                        "order by film_genres.genre_id";
+                        "where film_genres.film_id = ?";
 
-        return new HashSet<>(jdbcTemplate.query(sqlQuery, this::mapRowToGenre, id));
+        Set<Genre> genres = new HashSet<>();
+        jdbcTemplate.query(sqlQuery, resultSet -> {
+            referenceData.getGenreById(resultSet.getInt("genre_id")).ifPresent(genres::add);
+        }, id);
+        return genres;
     }
 
     public Set<Director> getFilmDirectors(Long id) {
@@ -372,7 +756,11 @@ public class FilmDbStorage implements FilmStorage {
                         "from film_likes " +
                         "where film_likes.film_id = ?";
 
-        return new HashSet<>(jdbcTemplate.queryForList(sqlQuery, Long.class, id));
+        IdBitmap likes = new IdBitmap();
+        jdbcTemplate.query(sqlQuery, resultSet -> {
+            likes.add(resultSet.getLong("user_id"));
+        }, id);
+        return likes;
     }
 
     private Optional<Film> getFilmById(Long id) {
@@ -383,36 +771,145 @@ public class FilmDbStorage implements FilmStorage {
                         "   films.description, " +
                         "   films.release_date, " +
                         "   films.duration, " +
-                        "   films.mpa_id, " +
-                        "   mpa.name as mpa_name, " +
-                        "   mpa.description as mpa_description " +
+                        "   films.mpa_id " +
+                        hydrationColumns("films") +
                         "from films " +
-                        "   left join mpa " +
-                        "   on films.mpa_id = mpa.mpa_id " +
                         "where film_id = ?";
 
-        Collection<Film> films = jdbcTemplate.query(sqlQuery, this::mapRowToFilm, id);
+        Collection<Film> films = hydrateFilms(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, id));
         return films.stream().findFirst();
     }
 
+    private String hydrationColumns(String filmAlias) {
+        if (hydrationMode != FilmHydrationMode.AGGREGATE) {
+            return "";
+        }
+        String filmId = filmAlias + ".film_id";
+        return ", (select array_agg(film_genres.genre_id order by film_genres.genre_id) " +
+                "   from film_genres where film_genres.film_id = " + filmId + ") as genre_ids, " +
+                "(select array_agg(film_directors.director_id order by film_directors.director_id) " +
+                "   from film_directors where film_directors.film_id = " + filmId + ") as director_ids, " +
+                "(select array_agg(directors.name order by film_directors.director_id) " +
+                "   from film_directors left join directors on film_directors.director_id = directors.director_id " +
+                "   where film_directors.film_id = " + filmId + ") as director_names, " +
+                "(select array_agg(film_likes.user_id) " +
+                "   from film_likes where film_likes.film_id = " + filmId + ") as like_user_ids ";
+    }
+
     private Film mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
+        if (hydrationMode == FilmHydrationMode.AGGREGATE) {
+            return mapAggregatedRowToFilm(resultSet);
+        }
+        return Film.builder()
+                .id(resultSet.getLong("film_id"))
+                .name(resultSet.getString("name"))
+                .description(resultSet.getString("description"))
+                .duration(resultSet.getInt("duration"))
+                .releaseDate(resultSet.getDate("release_date").toLocalDate())
+                .mpa(getMpa(resultSet.getInt("mpa_id")))
+                .genres(new HashSet<>())
+                .directors(new HashSet<>())
+                .likes(new IdBitmap())
+                .build();
+    }
+
+    private Film mapAggregatedRowToFilm(ResultSet resultSet) throws SQLException {
+        Set<Genre> genres = new HashSet<>();
+        for (Object genreId : toArray(resultSet.getArray("genre_ids"))) {
+            referenceData.getGenreById(((Number) genreId).intValue()).ifPresent(genres::add);
+        }
+
+        Set<Director> directors = new HashSet<>();
+        Object[] directorIds = toArray(resultSet.getArray("director_ids"));
+        Object[] directorNames = toArray(resultSet.getArray("director_names"));
+        for (int i = 0; i < directorIds.length; i++) {
+            directors.add(Director.builder()
+                    .id(((Number) directorIds[i]).longValue())
+                    .name((String) directorNames[i])
+                    .build());
+        }
+
+        IdBitmap likes = new IdBitmap();
+        for (Object userId : toArray(resultSet.getArray("like_user_ids"))) {
+            likes.add(((Number) userId).longValue());
+        }
+
         return Film.builder()
                 .id(resultSet.getLong("film_id"))
                 .name(resultSet.getString("name"))
                 .description(resultSet.getString("description"))
                 .duration(resultSet.getInt("duration"))
                 .releaseDate(resultSet.getDate("release_date").toLocalDate())
-                .mpa(new Mpa(resultSet.getInt("mpa_id"),
-                        resultSet.getString("mpa_name"),
-                        resultSet.getString("mpa_description")))
-                .genres(getFilmGenres(resultSet.getLong("film_id")))
-                .directors(getFilmDirectors(resultSet.getLong("film_id")))
-                .likes(getFilmLikes(resultSet.getLong("film_id")))
+                .mpa(getMpa(resultSet.getInt("mpa_id")))
+                .genres(genres)
+                .directors(directors)
+                .likes(likes)
                 .build();
     }
 
-    private Genre mapRowToGenre(ResultSet resultSet, int rowNum) throws SQLException {
-        return new Genre(resultSet.getInt("genre_id"), resultSet.getString("name"));
+    private Object[] toArray(Array array) throws SQLException {
+        return array == null ? new Object[0] : (Object[]) array.getArray();
+    }
+
+    private List<Film> hydrateFilms(List<Film> films) {
+        if (hydrationMode == FilmHydrationMode.AGGREGATE) {
+            return films;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        films.forEach(film -> filmsById.put(film.getId(), film));
+
+        List<Long> ids = new ArrayList<>(filmsById.keySet());
+        for (int from = 0; from < ids.size(); from += HYDRATION_BATCH_SIZE) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource("ids",
+                    ids.subList(from, Math.min(from + HYDRATION_BATCH_SIZE, ids.size())));
+            loadGenres(filmsById, parameters);
+            loadDirectors(filmsById, parameters);
+            loadLikes(filmsById, parameters);
+        }
+        return films;
+    }
+
+    private void loadGenres(Map<Long, Film> filmsById, MapSqlParameterSource parameters) {
+        String sqlQuery =
+                "select " +
+                        "   film_genres.film_id, " +
+                        "   film_genres.genre_id " +
+                        "from film_genres " +
+                        "where film_genres.film_id in (:ids)";
+
+        namedParameterJdbcTemplate.query(sqlQuery, parameters, resultSet -> {
+            referenceData.getGenreById(resultSet.getInt("genre_id"))
+                    .ifPresent(filmsById.get(resultSet.getLong("film_id")).getGenres()::add);
+        });
+    }
+
+    private void loadDirectors(Map<Long, Film> filmsById, MapSqlParameterSource parameters) {
+        String sqlQuery =
+                "select " +
+                        "   film_directors.film_id, " +
+                        "   film_directors.director_id, " +
+                        "   directors.name " +
+                        "from film_directors " +
+                        "   left join directors " +
+                        "   on film_directors.director_id = directors.director_id " +
+                        "where film_directors.film_id in (:ids)";
+
+        namedParameterJdbcTemplate.query(sqlQuery, parameters, resultSet -> {
+            filmsById.get(resultSet.getLong("film_id")).getDirectors().add(mapRowToDirector(resultSet, 0));
+        });
+    }
+
+    private void loadLikes(Map<Long, Film> filmsById, MapSqlParameterSource parameters) {
+        String sqlQuery =
+                "select " +
+                        "   film_likes.film_id, " +
+                        "   film_likes.user_id " +
+                        "from film_likes " +
+                        "where film_likes.film_id in (:ids)";
+
+        namedParameterJdbcTemplate.query(sqlQuery, parameters, resultSet -> {
+            filmsById.get(resultSet.getLong("film_id")).getLikes().add(resultSet.getLong("user_id"));
+        });
     }
 
     private Director mapRowToDirector(ResultSet resultSet, int rowNum) throws SQLException {
@@ -422,9 +919,8 @@ public class FilmDbStorage implements FilmStorage {
                 .build();
     }
 
-    private Mpa mapRowToMpa(ResultSet resultSet, int rowNum) throws SQLException {
-        return new Mpa(resultSet.getInt("mpa_id"), resultSet.getString("name"),
-                resultSet.getString("description"));
+    private Mpa getMpa(int mpaId) {
+        return referenceData.getMpaById(mpaId).orElseGet(() -> new Mpa(mpaId, null, null));
     }
 
     private void addDirectorToFilm(Long filmId, Long directorId) {
@@ -442,6 +938,7 @@ public class FilmDbStorage implements FilmStorage {
 
         long directorId = simpleJdbcInsert.executeAndReturnKey(directorMap).longValue();
         Director newDirector = Director.builder().id(directorId).name(director.getName()).build();
+        searchIndex.putDirector(directorId, director.getName());
 
         log.info("Добавлен режиссёр: " + director.getName());
         return Optional.of(newDirector);
@@ -469,12 +966,9 @@ public class FilmDbStorage implements FilmStorage {
                     "   films.description, " +
                     "   films.release_date, " +
                     "   films.duration, " +
-                    "   films.mpa_id, " +
-                    "   mpa.name as mpa_name, " +
-                    "   mpa.description as mpa_description " +
+                    "   films.mpa_id " +
+                    hydrationColumns("films") +
                     "from films " +
-                    "   left join mpa " +
-                    "   on films.mpa_id = mpa.mpa_id " +
                     "where films.film_id in (select film_id from film_directors where director_id = ?) " +
                     "order by films.release_date";
         } else {
@@ -484,22 +978,18 @@ public class FilmDbStorage implements FilmStorage {
                     "   films.description, " +
                     "   films.release_date, " +
                     "   films.duration, " +
-                    "   films.mpa_id, " +
-                    "   mpa.name as mpa_name, " +
-                    "   mpa.description as mpa_description " +
+                    "   films.mpa_id " +
+                    hydrationColumns("films") +
                     "from films " +
-                    "   left join mpa " +
-                    "   on films.mpa_id = mpa.mpa_id " +
-                    "   left join film_likes " +
-                    "   on films.film_id = film_likes.film_id " +
+                    "   left join film_rating " +
+                    "   on films.film_id = film_rating.film_id " +
                     "where films.film_id in ( " +
                     "                       select film_id " +
                     "                       from film_directors " +
                     "                       where director_id = ?) " +
-                    "group by films.film_id " +
-                    "order by avg(film_likes.mark) desc, count(film_likes.mark) desc ";
+                    "order by film_rating.avg_mark desc, film_rating.mark_count desc ";
         }
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, directorId);
+        return hydrateFilms(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, directorId));
     }
 
     @Override
@@ -522,19 +1012,74 @@ public class FilmDbStorage implements FilmStorage {
         if (rowCount == 0) {
             return Optional.empty();
         }
+        searchIndex.putDirector(director.getId(), director.getName());
+        getDirectorFilmIds(director.getId()).forEach(filmCache::invalidate);
         log.info("Обновлён режиссёр: " + director.getName());
         return Optional.of(director);
     }
 
     @Override
     public void removeDirector(Long id) {
+        List<Long> filmIds = getDirectorFilmIds(id);
         String sqlQuery = "delete from directors where director_id = ?";
         jdbcTemplate.update(sqlQuery, id);
+        searchIndex.removeDirector(id);
+        filmIds.forEach(filmCache::invalidate);
         log.info("Режиссёр с id " + id + " удалён.");
     }
 
+    private List<Long> getDirectorFilmIds(Long directorId) {
+        String sqlQuery = "select film_id from film_directors where director_id = ?";
+        return jdbcTemplate.queryForList(sqlQuery, Long.class, directorId);
+    }
+
     @Override
     public Collection<Film> getFilmsRecommendation(long userId) {
+        List<Long> precomputed = getPrecomputedRecommendation(userId);
+        if (!precomputed.isEmpty()) {
+            return getFilmsByIds(precomputed);
+        }
+        if (recommendationStrategy == RecommendationStrategy.SQL) {
+            return getFilmsRecommendationInDatabase(userId);
+        }
+        return getFilmsByIds(computeRecommendation(userId));
+    }
+
+    /**
+     * Рекомендации из user_recommendations без фильмов, которые пользователь оценил после расчёта.
+     */
+    @Override
+    public List<Long> getPrecomputedRecommendation(long userId) {
+        List<Long> precomputed = jdbcTemplate.queryForList("select film_id from user_recommendations " +
+                "where user_id = ? order by position", Long.class, userId);
+        long[] ratedFilms = likedFilmsIndex.getLikedFilms(userId);
+        return precomputed.stream()
+                .filter(filmId -> Arrays.binarySearch(ratedFilms, filmId) < 0)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Считает рекомендации выбранной стратегией, не заглядывая в user_recommendations.
+     */
+    @Override
+    public List<Long> computeRecommendation(long userId) {
+        switch (recommendationStrategy) {
+            case ITEM_BASED:
+                return itemBasedRecommender.recommend(userId, maxRecommendations);
+            case COOCCURRENCE:
+                return getCooccurrenceRecommendation(userId);
+            case USER_BASED:
+                return getUserBasedRecommendation(userId);
+            case MATRIX_FACTORIZATION:
+                return getMatrixFactorizationRecommendation(userId);
+            default:
+                return getFilmsRecommendationInDatabase(userId).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList());
+        }
+    }
+
+    private Collection<Film> getFilmsRecommendationInDatabase(long userId) {
               String sqlQuery = "" +
                         "select " +
                         "   films.film_id, " +
@@ -542,12 +1087,9 @@ public class FilmDbStorage implements FilmStorage {
                         "   films.description, " +
                         "   films.release_date, " +
                         "   films.duration, " +
-                        "   films.mpa_id, " +
-                        "   mpa.name as mpa_name, " +
-                        "   mpa.description as mpa_description " +
+                        "   films.mpa_id " +
+                        hydrationColumns("films") +
                         "from films " +
-                        "   left join mpa " +
-                        "   on films.mpa_id = mpa.mpa_id " +
                         "where film_id in (" +
                         "    select " +
                         "        film_likes.film_id " +
@@ -605,10 +1147,70 @@ public class FilmDbStorage implements FilmStorage {
 //                "order by avg(film_likes.mark) desc, count(film_likes.user_id) desc" +
 //                "   )";
 
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, userId, userId, userId);
+        return hydrateFilms(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, userId, userId, userId));
+    }
+
+    private List<Long> getCooccurrenceRecommendation(long userId) {
+        Set<Long> ratedFilms = new HashSet<>();
+        List<Long> positiveFilms = new ArrayList<>();
+        jdbcTemplate.query("select film_id, mark from film_likes where user_id = ?", resultSet -> {
+            ratedFilms.add(resultSet.getLong("film_id"));
+            if (FilmCooccurrenceMatrix.isPositive(resultSet.getInt("mark"))) {
+                positiveFilms.add(resultSet.getLong("film_id"));
+            }
+        }, userId);
+        return cooccurrenceMatrix.recommend(positiveFilms, ratedFilms, maxRecommendations);
+    }
+
+    @Override
+    public List<Long> getRatedFilmIds(long userId) {
+        return Arrays.stream(likedFilmsIndex.getLikedFilms(userId)).boxed().collect(Collectors.toList());
+    }
+
+    private List<Long> getMatrixFactorizationRecommendation(long userId) {
+        Map<Long, Integer> ratings = new HashMap<>();
+        jdbcTemplate.query("select film_id, mark from film_likes where user_id = ?", resultSet -> {
+            ratings.put(resultSet.getLong("film_id"), resultSet.getInt("mark"));
+        }, userId);
+        return matrixFactorizationRecommender.recommend(ratings, maxRecommendations);
+    }
+
+    private List<Long> getUserBasedRecommendation(long userId) {
+        Set<Long> ratedFilms = new HashSet<>(getRatedFilmIds(userId));
+        Map<Long, Double> scores = new HashMap<>();
+        for (UserSimilarity similarUser : userLikeIndex.findSimilarUsers(userId, similarUserCount)) {
+            for (long filmId : userLikeIndex.getLikedFilms(similarUser.getUserId())) {
+                if (!ratedFilms.contains(filmId)) {
+                    scores.merge(filmId, similarUser.getSimilarity(), Double::sum);
+                }
+            }
+        }
+        return scores.keySet().stream()
+                .sorted(Comparator.comparing((Long filmId) -> scores.get(filmId)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(maxRecommendations)
+                .collect(Collectors.toList());
     }
 
     public Collection<Film> getCommonFilms(Long userId, Long otherId) {
+        return getCommonFilms(List.of(userId, otherId));
+    }
+
+    @Override
+    public Collection<Film> getCommonFilms(Collection<Long> userIds) {
+        long[] commonFilmIds = likedFilmsIndex.getCommonFilms(userIds);
+        if (commonFilmIds.length == 0) {
+            return new ArrayList<>();
+        }
+        if (popularityIndexEnabled) {
+            List<FilmScore> scores = new ArrayList<>();
+            for (long filmId : commonFilmIds) {
+                popularityIndex.getScore(filmId).ifPresent(scores::add);
+            }
+            scores.sort(FilmPopularityIndex.RANKING);
+            return getFilmsByIds(scores.stream().map(FilmScore::getFilmId).collect(Collectors.toList()));
+        }
+
         String sqlQuery = "" +
                 "select " +
         "films.film_id, " +
@@ -616,27 +1218,37 @@ public class FilmDbStorage implements FilmStorage {
                 "films.description, " +
                 "films.release_date, " +
                 "films.duration, " +
-                "films.mpa_id, " +
-                "mpa.name as mpa_name, " +
-        "mpa.description as mpa_description " +
+                "films.mpa_id " +
+        hydrationColumns("films") +
         "from films " +
-        "left join mpa " +
-        "on films.mpa_id = mpa.mpa_id " +
-        "left join film_likes " +
-        "on films.film_id = film_likes.film_id " +
-        "where " +
-        "films.film_id in " +
-        "(select " +
-        "film_likes.film_id " +
-        "from film_likes " +
-        "inner join film_likes as friend_likes " +
-        "on film_likes.film_id = friend_likes.film_id " +
+        "left join film_rating " +
+        "on films.film_id = film_rating.film_id " +
         "where " +
-        "film_likes.user_id = ? " +
-        "and friend_likes.user_id = ?) " +
-        "group by films.film_id " +
-        "order by avg(film_likes.mark) desc, count(film_likes.mark) desc";
+        "films.film_id in (:ids) " +
+        "order by film_rating.avg_mark desc, film_rating.mark_count desc";
+
+        return hydrateFilms(namedParameterJdbcTemplate.query(sqlQuery, new MapSqlParameterSource("ids",
+                Arrays.stream(commonFilmIds).boxed().collect(Collectors.toList())), this::mapRowToFilm));
+    }
+
+    @Override
+    public TasteCompatibility getCompatibility(Long userId, Long otherId) {
+        CompatibilityCache.Key key = CompatibilityCache.Key.of(userId, otherId);
+        CompatibilityCache.Result result = compatibilityCache.get(key, this::computeCompatibility).orElseThrow();
+        if (compatibilityCache.isStale(key, result)) {
+            result = compatibilityCache.refresh(key, this::computeCompatibility).orElseThrow();
+        }
+        return TasteCompatibility.builder()
+                .userId(userId)
+                .otherId(otherId)
+                .similarity(result.getSimilarity())
+                .commonFilms(result.getCommonFilms())
+                .build();
+    }
 
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, userId, otherId);
+    private Optional<CompatibilityCache.Result> computeCompatibility(CompatibilityCache.Key key) {
+        long computedAt = compatibilityCache.now();
+        RatingOverlap overlap = likedFilmsIndex.getOverlap(key.getUserId(), key.getOtherId());
+        return Optional.of(new CompatibilityCache.Result(overlap.getSimilarity(), overlap.getCommonFilms(), computedAt));
     }
 }
\ No newline at end of file
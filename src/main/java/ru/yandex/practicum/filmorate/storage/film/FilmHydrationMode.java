@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+public enum FilmHydrationMode {
+    BATCH,
+    AGGREGATE
+}
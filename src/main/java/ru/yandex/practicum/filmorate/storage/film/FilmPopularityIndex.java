@@ -0,0 +1,190 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рейтинг фильмов по оценкам, разбитый на партиции (жанр, год).
+ * Фильм лежит в партициях (любой, любой), (любой, год), (жанр, любой) и (жанр, год) для каждого своего жанра,
+ * поэтому любой запрос популярных фильмов читает первые count элементов одной партиции.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmPopularityIndex {
+    private static final int ANY = 0;
+    public static final Comparator<FilmScore> RANKING = Comparator
+            .comparing(FilmScore::hasMarks).reversed()
+            .thenComparing(Comparator.comparingDouble(FilmScore::getAverage).reversed())
+            .thenComparing(Comparator.comparingInt(FilmScore::getCount).reversed())
+            .thenComparingLong(FilmScore::getFilmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, FilmScore> scores = new HashMap<>();
+    private final Map<Long, NavigableSet<FilmScore>> partitions = new HashMap<>();
+    private volatile long version;
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, FilmScore> loadedScores = new HashMap<>();
+        String sqlQuery = "select " +
+                "   films.film_id, " +
+                "   year(films.release_date) as release_year, " +
+                "   coalesce(sum(film_likes.mark), 0) as mark_sum, " +
+                "   count(film_likes.mark) as mark_count " +
+                "from films " +
+                "   left join film_likes " +
+                "   on films.film_id = film_likes.film_id " +
+                "group by films.film_id";
+        jdbcTemplate.query(sqlQuery, resultSet -> {
+            long filmId = resultSet.getLong("film_id");
+            loadedScores.put(filmId, new FilmScore(filmId, resultSet.getInt("release_year"), new int[0],
+                    resultSet.getLong("mark_sum"), resultSet.getInt("mark_count")));
+        });
+
+        Map<Long, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("select film_id, genre_id from film_genres", resultSet -> {
+            genres.computeIfAbsent(resultSet.getLong("film_id"), id -> new ArrayList<>())
+                    .add(resultSet.getInt("genre_id"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            version++;
+            scores.clear();
+            partitions.clear();
+            loadedScores.values().forEach(score -> insert(score.withGenres(
+                    toArray(genres.getOrDefault(score.getFilmId(), Collections.emptyList())))));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс популярности построен, фильмов: " + loadedScores.size());
+    }
+
+    public void putFilm(long filmId, int year, Collection<Integer> genreIds) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            FilmScore old = remove(filmId);
+            long markSum = old == null ? 0 : old.getMarkSum();
+            int markCount = old == null ? 0 : old.getCount();
+            insert(new FilmScore(filmId, year, toArray(genreIds), markSum, markCount));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            remove(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void applyMark(long filmId, long markDelta, int countDelta) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            FilmScore old = remove(filmId);
+            if (old == null) {
+                return;
+            }
+            insert(old.withMarks(old.getMarkSum() + markDelta, old.getCount() + countDelta));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> getTop(int count, int genreId, int year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<FilmScore> partition = partitions.get(partitionKey(genreId, year));
+            if (partition == null) {
+                return Collections.emptyList();
+            }
+            List<Long> top = new ArrayList<>(Math.min(count, partition.size()));
+            Iterator<FilmScore> iterator = partition.iterator();
+            while (top.size() < count && iterator.hasNext()) {
+                top.add(iterator.next().getFilmId());
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<Long, FilmScore> getScores() {
+        lock.readLock().lock();
+        try {
+            return new HashMap<>(scores);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<FilmScore> getScore(long filmId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(scores.get(filmId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(FilmScore score) {
+        scores.put(score.getFilmId(), score);
+        for (long key : partitionKeys(score)) {
+            partitions.computeIfAbsent(key, k -> new TreeSet<>(RANKING)).add(score);
+        }
+    }
+
+    private FilmScore remove(long filmId) {
+        FilmScore score = scores.remove(filmId);
+        if (score == null) {
+            return null;
+        }
+        for (long key : partitionKeys(score)) {
+            NavigableSet<FilmScore> partition = partitions.get(key);
+            partition.remove(score);
+            if (partition.isEmpty()) {
+                partitions.remove(key);
+            }
+        }
+        return score;
+    }
+
+    private long[] partitionKeys(FilmScore score) {
+        int[] genres = score.getGenres();
+        long[] keys = new long[2 + genres.length * 2];
+        keys[0] = partitionKey(ANY, ANY);
+        keys[1] = partitionKey(ANY, score.getYear());
+        for (int i = 0; i < genres.length; i++) {
+            keys[2 + i * 2] = partitionKey(genres[i], ANY);
+            keys[3 + i * 2] = partitionKey(genres[i], score.getYear());
+        }
+        return keys;
+    }
+
+    private static long partitionKey(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+}
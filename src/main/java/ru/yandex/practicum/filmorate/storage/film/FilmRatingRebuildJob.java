@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmRatingRebuildJob {
+    private final FilmDbStorage filmStorage;
+
+    /**
+     * Каждый фильм пересчитывается в своей транзакции, чтобы не держать блокировки всех строк film_rating сразу.
+     */
+    @Scheduled(cron = "${filmorate.film-rating.rebuild-cron:0 0 4 * * *}")
+    public void rebuild() {
+        List<Long> staleIds = filmStorage.getStaleFilmRatingIds();
+        if (staleIds.isEmpty()) {
+            log.info("Агрегаты оценок фильмов согласованы с film_likes");
+            return;
+        }
+        int rowCount = 0;
+        for (Long filmId : staleIds) {
+            if (filmStorage.rebuildFilmRating(filmId)) {
+                rowCount++;
+            }
+        }
+        log.warn("Найдено расхождений в агрегатах оценок: " + staleIds.size() + ", пересчитано фильмов: " + rowCount);
+    }
+}
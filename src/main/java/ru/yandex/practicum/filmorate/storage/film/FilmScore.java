@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class FilmScore {
+    long filmId;
+    int year;
+    int[] genres;
+    long markSum;
+    int count;
+
+    public boolean hasMarks() {
+        return count > 0;
+    }
+
+    public double getAverage() {
+        return count == 0 ? 0 : (double) markSum / count;
+    }
+
+    FilmScore withGenres(int[] genres) {
+        return new FilmScore(filmId, year, genres, markSum, count);
+    }
+
+    FilmScore withMarks(long markSum, int count) {
+        return new FilmScore(filmId, year, genres, markSum, count);
+    }
+}
@@ -0,0 +1,395 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.cache.FilmSearchCache;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Триграммный индекс по названиям фильмов и именам режиссёров.
+ * Подстрока ищется пересечением отсортированных списков id по триграммам запроса с проверкой кандидатов,
+ * если подстрока не нашлась — фильмы ранжируются по доле совпавших триграмм запроса.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmSearchIndex {
+    public static final double EXACT_MATCH = 3;
+    public static final double WORD_MATCH = 2;
+    public static final double SUBSTRING_MATCH = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmSearchCache searchCache;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrigramIndex titles = new TrigramIndex();
+    private final TrigramIndex directors = new TrigramIndex();
+    private final Map<Long, Set<Long>> directorFilms = new HashMap<>();
+    private final Map<Long, Set<Long>> filmDirectors = new HashMap<>();
+    private volatile long version;
+
+    @Value("${filmorate.film.search-index.similarity-threshold:0.5}")
+    private double similarityThreshold;
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, String> films = new HashMap<>();
+        jdbcTemplate.query("select film_id, name from films", resultSet -> {
+            films.put(resultSet.getLong("film_id"), resultSet.getString("name"));
+        });
+        Map<Long, String> directorNames = new HashMap<>();
+        jdbcTemplate.query("select director_id, name from directors", resultSet -> {
+            directorNames.put(resultSet.getLong("director_id"), resultSet.getString("name"));
+        });
+        Map<Long, List<Long>> links = new HashMap<>();
+        jdbcTemplate.query("select film_id, director_id from film_directors", resultSet -> {
+            links.computeIfAbsent(resultSet.getLong("film_id"), id -> new ArrayList<>())
+                    .add(resultSet.getLong("director_id"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            version++;
+            titles.clear();
+            directors.clear();
+            directorFilms.clear();
+            filmDirectors.clear();
+            directorNames.forEach(directors::put);
+            films.forEach((filmId, name) -> {
+                titles.put(filmId, name);
+                linkDirectors(filmId, links.getOrDefault(filmId, Collections.emptyList()));
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        searchCache.invalidateAll();
+        log.info("Поисковый индекс построен, фильмов: " + films.size() + ", режиссёров: " + directorNames.size());
+    }
+
+    public void putFilm(long filmId, String name, Collection<Long> directorIds) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            List<String> changedTitles = Arrays.asList(titles.displayNames.get(filmId), name);
+            Set<String> changedDirectors = getDirectorNames(filmDirectors.get(filmId));
+            changedDirectors.addAll(getDirectorNames(directorIds));
+            titles.put(filmId, name);
+            unlinkDirectors(filmId);
+            linkDirectors(filmId, directorIds);
+            searchCache.invalidateMatching(filmId, changedTitles, changedDirectors);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            List<String> changedTitles = Collections.singletonList(titles.displayNames.get(filmId));
+            titles.remove(filmId);
+            unlinkDirectors(filmId);
+            searchCache.invalidateMatching(filmId, changedTitles, Collections.emptySet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(long directorId, String name) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            List<String> changedNames = Arrays.asList(directors.displayNames.get(directorId), name);
+            directors.put(directorId, name);
+            searchCache.invalidateMatching(null, Collections.emptySet(), changedNames);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(long directorId) {
+        lock.writeLock().lock();
+        try {
+            version++;
+            List<String> changedNames = Collections.singletonList(directors.displayNames.get(directorId));
+            directors.remove(directorId);
+            searchCache.invalidateMatching(null, Collections.emptySet(), changedNames);
+            Set<Long> films = directorFilms.remove(directorId);
+            if (films != null) {
+                films.forEach(filmId -> filmDirectors.get(filmId).remove(directorId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<Long, String> getTitles() {
+        lock.readLock().lock();
+        try {
+            return new HashMap<>(titles.displayNames);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, String> getDirectorNames() {
+        lock.readLock().lock();
+        try {
+            return new HashMap<>(directors.displayNames);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, List<Long>> getDirectorFilms() {
+        lock.readLock().lock();
+        try {
+            Map<Long, List<Long>> copy = new HashMap<>();
+            directorFilms.forEach((directorId, films) -> copy.put(directorId, new ArrayList<>(films)));
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, Double> search(String query, boolean byTitle, boolean byDirector) {
+        String normalized = query.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> found = collect(byTitle ? titles.findSubstring(normalized) : Collections.emptyMap(),
+                    byDirector ? directors.findSubstring(normalized) : Collections.emptyMap());
+            if (found.isEmpty()) {
+                found = collect(byTitle ? titles.findSimilar(normalized, similarityThreshold) : Collections.emptyMap(),
+                        byDirector ? directors.findSimilar(normalized, similarityThreshold) : Collections.emptyMap());
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Релевантность вхождения запроса в название, оба в нижнем регистре: точное совпадение, целое слово
+     * или подстрока; 0, если вхождения нет.
+     */
+    static double getRelevance(String name, String query) {
+        int from = name.indexOf(query);
+        if (from < 0) {
+            return 0;
+        }
+        if (name.equals(query)) {
+            return EXACT_MATCH;
+        }
+        if (query.isEmpty()) {
+            return SUBSTRING_MATCH;
+        }
+        while (from >= 0) {
+            if (isBoundary(name, from - 1) && isBoundary(name, from + query.length())) {
+                return WORD_MATCH;
+            }
+            from = name.indexOf(query, from + 1);
+        }
+        return SUBSTRING_MATCH;
+    }
+
+    private static boolean isBoundary(String name, int index) {
+        return index < 0 || index >= name.length() || !Character.isLetterOrDigit(name.charAt(index));
+    }
+
+    private Map<Long, Double> collect(Map<Long, Double> titleMatches, Map<Long, Double> directorMatches) {
+        Map<Long, Double> found = new HashMap<>(titleMatches);
+        directorMatches.forEach((directorId, relevance) -> directorFilms.getOrDefault(directorId, Collections.emptySet())
+                .forEach(filmId -> found.merge(filmId, relevance, Math::max)));
+        return found;
+    }
+
+    private Set<String> getDirectorNames(Collection<Long> directorIds) {
+        Set<String> names = new HashSet<>();
+        if (directorIds != null) {
+            directorIds.forEach(directorId -> names.add(directors.displayNames.get(directorId)));
+        }
+        return names;
+    }
+
+    private void linkDirectors(long filmId, Collection<Long> directorIds) {
+        Set<Long> linked = filmDirectors.computeIfAbsent(filmId, id -> new HashSet<>());
+        for (Long directorId : directorIds) {
+            linked.add(directorId);
+            directorFilms.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+        }
+    }
+
+    private void unlinkDirectors(long filmId) {
+        Set<Long> linked = filmDirectors.remove(filmId);
+        if (linked == null) {
+            return;
+        }
+        for (Long directorId : linked) {
+            Set<Long> films = directorFilms.get(directorId);
+            if (films != null) {
+                films.remove(filmId);
+            }
+        }
+    }
+
+    private static class TrigramIndex {
+        private final Map<Long, String> names = new HashMap<>();
+        private final Map<Long, String> displayNames = new HashMap<>();
+        private final Map<Long, Postings> postings = new HashMap<>();
+
+        void put(long id, String name) {
+            remove(id);
+            String normalized = name.toLowerCase(Locale.ROOT);
+            names.put(id, normalized);
+            displayNames.put(id, name);
+            for (long trigram : trigrams(normalized, true)) {
+                postings.computeIfAbsent(trigram, key -> new Postings()).add(id);
+            }
+        }
+
+        void remove(long id) {
+            String name = names.remove(id);
+            if (name == null) {
+                return;
+            }
+            displayNames.remove(id);
+            for (long trigram : trigrams(name, true)) {
+                Postings list = postings.get(trigram);
+                list.remove(id);
+                if (list.size == 0) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+
+        void clear() {
+            names.clear();
+            displayNames.clear();
+            postings.clear();
+        }
+
+        Map<Long, Double> findSubstring(String query) {
+            Map<Long, Double> found = new HashMap<>();
+            long[] queryTrigrams = trigrams(query, false);
+            if (queryTrigrams.length == 0) {
+                names.forEach((id, name) -> addIfContains(found, id, name, query));
+                return found;
+            }
+
+            Postings[] lists = new Postings[queryTrigrams.length];
+            for (int i = 0; i < queryTrigrams.length; i++) {
+                lists[i] = postings.get(queryTrigrams[i]);
+                if (lists[i] == null) {
+                    return found;
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+            Postings smallest = lists[0];
+            for (int i = 0; i < smallest.size; i++) {
+                long id = smallest.ids[i];
+                boolean inAll = true;
+                for (int j = 1; j < lists.length && inAll; j++) {
+                    inAll = lists[j].contains(id);
+                }
+                if (inAll) {
+                    addIfContains(found, id, names.get(id), query);
+                }
+            }
+            return found;
+        }
+
+        Map<Long, Double> findSimilar(String query, double threshold) {
+            Map<Long, Double> found = new HashMap<>();
+            long[] queryTrigrams = trigrams(query, true);
+            if (queryTrigrams.length == 0) {
+                return found;
+            }
+            Map<Long, Integer> shared = new HashMap<>();
+            for (long trigram : queryTrigrams) {
+                Postings list = postings.get(trigram);
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size; i++) {
+                    shared.merge(list.ids[i], 1, Integer::sum);
+                }
+            }
+            shared.forEach((id, count) -> {
+                double similarity = (double) count / queryTrigrams.length;
+                if (similarity >= threshold) {
+                    found.put(id, similarity);
+                }
+            });
+            return found;
+        }
+
+        private static void addIfContains(Map<Long, Double> found, long id, String name, String query) {
+            double relevance = getRelevance(name, query);
+            if (relevance > 0) {
+                found.put(id, relevance);
+            }
+        }
+
+        /**
+         * Триграммы считаются по словам. С padded каждое слово дополняется пробелами ("  w "),
+         * как в pg_trgm; без него остаются только внутренние триграммы — они есть у любого слова,
+         * содержащего фрагмент запроса.
+         */
+        private static long[] trigrams(String text, boolean padded) {
+            Set<Long> result = new LinkedHashSet<>();
+            for (String word : text.trim().split("\\s+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                String source = padded ? "  " + word + " " : word;
+                for (int i = 0; i + 3 <= source.length(); i++) {
+                    result.add(((long) source.charAt(i) << 32) | ((long) source.charAt(i + 1) << 16)
+                            | source.charAt(i + 2));
+                }
+            }
+            return result.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    private static class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
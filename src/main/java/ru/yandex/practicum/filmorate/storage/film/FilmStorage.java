@@ -4,9 +4,11 @@ import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.model.enums.SortType;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Optional<Film> addFilm(Film film);
@@ -17,6 +19,12 @@ public interface FilmStorage {
 
     Collection<Film> getFilms();
 
+    List<Film> getFilms(long afterId, int limit);
+
+    List<Film> getFilmsByIds(List<Long> ids);
+
+    void exportFilms(Consumer<Film> consumer);
+
     boolean filmExist(Long id);
 
     boolean filmNotExist(Long id);
@@ -33,6 +41,8 @@ public interface FilmStorage {
 
     Optional<Genre> getGenreById(int id);
 
+    String getReferenceDataVersion();
+
     Optional<Director> addDirector(Director director);
 
     Optional<Director> updateDirector(Director director);
@@ -53,9 +63,23 @@ public interface FilmStorage {
 
     Collection<Film> getFilmsRecommendation(long userId);
 
+    List<Long> getPrecomputedRecommendation(long userId);
+
+    List<Long> computeRecommendation(long userId);
+
+    List<Long> getRatedFilmIds(long userId);
+
     Collection<Film> getPopularFilms(Integer count, Integer genre, Integer year);
 
+    Collection<Film> getTrendingFilms(Duration window, int count);
+
     Collection<Film> searchFilms(String query, List<String> by);
 
+    List<Suggestion> getSuggestions(String prefix, int count);
+
     Collection<Film> getCommonFilms(Long userId, Long otherId);
+
+    Collection<Film> getCommonFilms(Collection<Long> userIds);
+
+    TasteCompatibility getCompatibility(Long userId, Long otherId);
 }
@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * Подсказки по префиксу для строки поиска. Ключи — названия фильмов и имена режиссёров, начиная с каждого слова,
+ * лежат в отсортированном массиве. Для префиксов до PRECOMPUTED_DEPTH символов лучшие подсказки посчитаны заранее,
+ * более длинный префикс выделяет узкий диапазон ключей, который ранжируется при запросе.
+ * Снимок пересобирается планировщиком, если с прошлой сборки изменились названия или оценки.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmSuggestIndex {
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final int PRECOMPUTED_DEPTH = 3;
+    private static final int[] NO_RANKS = new int[0];
+    private static final Comparator<Candidate> CANDIDATE_RANKING = Comparator
+            .comparing(Candidate::getScore, Comparator.nullsLast(FilmPopularityIndex.RANKING))
+            .thenComparing(candidate -> candidate.getSuggestion().getType())
+            .thenComparing(candidate -> candidate.getSuggestion().getId());
+
+    private final FilmSearchIndex searchIndex;
+    private final FilmPopularityIndex popularityIndex;
+    private volatile Snapshot snapshot = new Snapshot(new Suggestion[0], new String[0], NO_RANKS,
+            Collections.emptyMap());
+    private long builtSearchVersion = -1;
+    private long builtRatingVersion = -1;
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${filmorate.suggest.refresh-interval:PT5S}")
+    public synchronized void refresh() {
+        long searchVersion = searchIndex.getVersion();
+        long ratingVersion = popularityIndex.getVersion();
+        if (searchVersion == builtSearchVersion && ratingVersion == builtRatingVersion) {
+            return;
+        }
+        snapshot = build();
+        builtSearchVersion = searchVersion;
+        builtRatingVersion = ratingVersion;
+        log.debug("Индекс подсказок пересобран, ключей: " + snapshot.keys.length);
+    }
+
+    public List<Suggestion> suggest(String prefix, int count) {
+        Snapshot current = snapshot;
+        String normalized = prefix.toLowerCase(Locale.ROOT).stripLeading();
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] ranks = normalized.length() <= PRECOMPUTED_DEPTH
+                ? current.top.getOrDefault(normalized, NO_RANKS)
+                : current.rankRange(normalized, count);
+
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(count, ranks.length));
+        for (int i = 0; i < ranks.length && suggestions.size() < count; i++) {
+            suggestions.add(current.suggestions[ranks[i]]);
+        }
+        return suggestions;
+    }
+
+    private Snapshot build() {
+        Map<Long, FilmScore> scores = popularityIndex.getScores();
+        Map<Long, List<Long>> directorFilms = searchIndex.getDirectorFilms();
+
+        List<Candidate> candidates = new ArrayList<>();
+        searchIndex.getTitles().forEach((filmId, title) -> candidates.add(
+                new Candidate(new Suggestion(SuggestionType.FILM, filmId, title), scores.get(filmId))));
+        searchIndex.getDirectorNames().forEach((directorId, name) -> {
+            FilmScore best = directorFilms.getOrDefault(directorId, Collections.emptyList()).stream()
+                    .map(scores::get)
+                    .filter(Objects::nonNull)
+                    .min(FilmPopularityIndex.RANKING)
+                    .orElse(null);
+            candidates.add(new Candidate(new Suggestion(SuggestionType.DIRECTOR, directorId, name), best));
+        });
+        candidates.sort(CANDIDATE_RANKING);
+
+        Suggestion[] suggestions = new Suggestion[candidates.size()];
+        List<Key> keys = new ArrayList<>();
+        Map<String, List<Integer>> top = new HashMap<>();
+        for (int rank = 0; rank < suggestions.length; rank++) {
+            suggestions[rank] = candidates.get(rank).getSuggestion();
+            Set<String> prefixes = new HashSet<>();
+            for (String key : wordSuffixes(suggestions[rank].getText())) {
+                keys.add(new Key(key, rank));
+                for (int length = 1; length <= Math.min(PRECOMPUTED_DEPTH, key.length()); length++) {
+                    prefixes.add(key.substring(0, length));
+                }
+            }
+            for (String prefix : prefixes) {
+                List<Integer> ranks = top.computeIfAbsent(prefix, p -> new ArrayList<>());
+                if (ranks.size() < MAX_SUGGESTIONS) {
+                    ranks.add(rank);
+                }
+            }
+        }
+        keys.sort(Comparator.comparing(Key::getText).thenComparingInt(Key::getRank));
+
+        String[] keyTexts = new String[keys.size()];
+        int[] keyRanks = new int[keys.size()];
+        for (int i = 0; i < keyTexts.length; i++) {
+            keyTexts[i] = keys.get(i).getText();
+            keyRanks[i] = keys.get(i).getRank();
+        }
+        Map<String, int[]> topRanks = new HashMap<>();
+        top.forEach((prefix, ranks) -> topRanks.put(prefix, ranks.stream().mapToInt(Integer::intValue).toArray()));
+        return new Snapshot(suggestions, keyTexts, keyRanks, topRanks);
+    }
+
+    private static List<String> wordSuffixes(String text) {
+        String normalized = text.toLowerCase(Locale.ROOT);
+        List<String> suffixes = new ArrayList<>();
+        for (int i = 0; i < normalized.length(); i++) {
+            boolean wordStart = !Character.isWhitespace(normalized.charAt(i))
+                    && (i == 0 || Character.isWhitespace(normalized.charAt(i - 1)));
+            if (wordStart) {
+                suffixes.add(normalized.substring(i));
+            }
+        }
+        return suffixes;
+    }
+
+    private static class Snapshot {
+        final Suggestion[] suggestions;
+        final String[] keys;
+        final int[] keyRanks;
+        final Map<String, int[]> top;
+
+        Snapshot(Suggestion[] suggestions, String[] keys, int[] keyRanks, Map<String, int[]> top) {
+            this.suggestions = suggestions;
+            this.keys = keys;
+            this.keyRanks = keyRanks;
+            this.top = top;
+        }
+
+        int[] rankRange(String prefix, int count) {
+            int from = 0;
+            int to = keys.length;
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (keys[middle].compareTo(prefix) < 0) {
+                    from = middle + 1;
+                } else {
+                    to = middle;
+                }
+            }
+            while (to < keys.length && keys[to].startsWith(prefix)) {
+                to++;
+            }
+            int[] ranks = Arrays.copyOfRange(keyRanks, from, to);
+            Arrays.sort(ranks);
+            int distinct = 0;
+            for (int i = 0; i < ranks.length && distinct < count; i++) {
+                if (distinct == 0 || ranks[distinct - 1] != ranks[i]) {
+                    ranks[distinct++] = ranks[i];
+                }
+            }
+            return Arrays.copyOf(ranks, distinct);
+        }
+    }
+
+    @lombok.Value
+    private static class Candidate {
+        Suggestion suggestion;
+        FilmScore score;
+    }
+
+    @lombok.Value
+    private static class Key {
+        String text;
+        int rank;
+    }
+}
@@ -0,0 +1,215 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Счётчики лайков по часовым корзинам за последнюю неделю. Первый лайк пользователя фильму увеличивает
+ * счётчик текущей корзины, повторная оценка его не меняет, а удаление лайка уменьшает счётчик той корзины,
+ * в которую он попал. Корзина помнит свои лайки, поэтому при переиспользовании её слота из индекса
+ * вытесняются только лайки этой корзины. Рейтинг окна считается по корзинам с экспоненциальным затуханием
+ * и кешируется на refresh-interval.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmTrendingIndex {
+    public static final Duration BUCKET_WIDTH = Duration.ofHours(1);
+    public static final Duration MAX_WINDOW = Duration.ofDays(7);
+
+    private static final long BUCKET_MILLIS = BUCKET_WIDTH.toMillis();
+    private static final int BUCKETS = (int) (MAX_WINDOW.toMillis() / BUCKET_MILLIS);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(BUCKETS);
+    private final Map<Long, Ranking> rankings = new ConcurrentHashMap<>();
+    private final Map<Like, Long> likedAt = new ConcurrentHashMap<>();
+    private Clock clock = Clock.systemUTC();
+
+    @Value("${filmorate.trending.half-life:6h}")
+    private Duration halfLife;
+    @Value("${filmorate.trending.refresh-interval:1s}")
+    private Duration refreshInterval;
+
+    @PostConstruct
+    public void load() {
+        Timestamp from = new Timestamp(clock.millis() - MAX_WINDOW.toMillis());
+        Set<Like> likedBefore = new HashSet<>();
+        String likedBeforeQuery = "select user_id, entity_id, operation from events " +
+                "where event_type = 'LIKE' and timestamp <= ? " +
+                "and (user_id, entity_id) in (select user_id, entity_id from events " +
+                "where event_type = 'LIKE' and timestamp > ?) " +
+                "order by timestamp, event_id";
+        jdbcTemplate.query(likedBeforeQuery, resultSet -> {
+            Like like = new Like(resultSet.getLong("user_id"), resultSet.getLong("entity_id"));
+            if ("ADD".equals(resultSet.getString("operation"))) {
+                likedBefore.add(like);
+            } else {
+                likedBefore.remove(like);
+            }
+        }, from, from);
+
+        String sqlQuery = "select user_id, entity_id, operation, timestamp from events " +
+                "where event_type = 'LIKE' and timestamp > ? " +
+                "order by timestamp, event_id";
+        jdbcTemplate.query(sqlQuery, resultSet -> {
+            Like like = new Like(resultSet.getLong("user_id"), resultSet.getLong("entity_id"));
+            if (!"ADD".equals(resultSet.getString("operation"))) {
+                likedBefore.remove(like);
+                removeLike(like);
+            } else if (!likedBefore.contains(like) && !likedAt.containsKey(like)) {
+                addLike(like, resultSet.getTimestamp("timestamp").getTime());
+            }
+        }, from);
+        rankings.clear();
+    }
+
+    /**
+     * Учитывает первый лайк пользователя фильму; повторные оценки сюда приходить не должны.
+     */
+    public void registerLike(long filmId, long userId) {
+        addLike(new Like(userId, filmId), clock.millis());
+    }
+
+    public void unregisterLike(long filmId, long userId) {
+        removeLike(new Like(userId, filmId));
+    }
+
+    public void removeFilm(long filmId) {
+        likedAt.keySet().stream()
+                .filter(like -> like.getFilmId() == filmId)
+                .collect(Collectors.toList())
+                .forEach(this::removeLike);
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null) {
+                bucket.getCounts().remove(filmId);
+            }
+        }
+        rankings.clear();
+    }
+
+    public void removeUser(long userId) {
+        likedAt.keySet().stream()
+                .filter(like -> like.getUserId() == userId)
+                .collect(Collectors.toList())
+                .forEach(this::removeLike);
+        rankings.clear();
+    }
+
+    public List<Long> getTop(Duration window, int count) {
+        long bucketCount = Math.min(BUCKETS, (window.toMillis() + BUCKET_MILLIS - 1) / BUCKET_MILLIS);
+        long now = clock.millis();
+
+        Ranking ranking = rankings.get(bucketCount);
+        if (ranking == null || now - ranking.getComputedAt() > refreshInterval.toMillis()) {
+            ranking = computeRanking(bucketCount, now);
+            rankings.put(bucketCount, ranking);
+        }
+        List<Long> filmIds = ranking.getFilmIds();
+        return filmIds.subList(0, Math.min(count, filmIds.size()));
+    }
+
+    private void addLike(Like like, long timestamp) {
+        Bucket bucket = getBucket(timestamp / BUCKET_MILLIS);
+        if (bucket != null) {
+            likedAt.put(like, timestamp);
+            bucket.getLikes().add(like);
+            bucket.getCounts().computeIfAbsent(like.getFilmId(), id -> new LongAdder()).increment();
+        }
+    }
+
+    private void removeLike(Like like) {
+        Long timestamp = likedAt.remove(like);
+        if (timestamp == null) {
+            return;
+        }
+        long index = timestamp / BUCKET_MILLIS;
+        Bucket bucket = buckets.get((int) (index % BUCKETS));
+        if (bucket != null && bucket.getIndex() == index) {
+            bucket.getLikes().remove(like);
+            LongAdder likes = bucket.getCounts().get(like.getFilmId());
+            if (likes != null) {
+                likes.decrement();
+            }
+        }
+    }
+
+    private Bucket getBucket(long index) {
+        int slot = (int) (index % BUCKETS);
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.getIndex() >= index) {
+                return bucket.getIndex() == index ? bucket : null;
+            }
+            Bucket newBucket = new Bucket(index);
+            if (buckets.compareAndSet(slot, bucket, newBucket)) {
+                if (bucket != null) {
+                    expire(bucket);
+                }
+                return newBucket;
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        bucket.getLikes().forEach(like -> likedAt.computeIfPresent(like,
+                (key, timestamp) -> timestamp / BUCKET_MILLIS == bucket.getIndex() ? null : timestamp));
+    }
+
+    private Ranking computeRanking(long bucketCount, long now) {
+        double decayRate = Math.log(2) / halfLife.toMillis();
+        long currentIndex = now / BUCKET_MILLIS;
+
+        Map<Long, Double> scores = new HashMap<>();
+        for (long index = currentIndex - bucketCount + 1; index <= currentIndex; index++) {
+            Bucket bucket = buckets.get((int) (index % BUCKETS));
+            if (bucket == null || bucket.getIndex() != index) {
+                continue;
+            }
+            long age = Math.max(0, now - (index * BUCKET_MILLIS + BUCKET_MILLIS / 2));
+            double weight = Math.exp(-decayRate * age);
+            bucket.getCounts().forEach((filmId, likes) -> scores.merge(filmId, likes.sum() * weight, Double::sum));
+        }
+
+        List<Long> filmIds = scores.entrySet().stream()
+                .filter(score -> score.getValue() > 0)
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        return new Ranking(now, filmIds);
+    }
+
+    @lombok.Value
+    private static class Bucket {
+        long index;
+        Map<Long, LongAdder> counts = new ConcurrentHashMap<>();
+        Set<Like> likes = ConcurrentHashMap.newKeySet();
+    }
+
+    @lombok.Value
+    private static class Like {
+        long userId;
+        long filmId;
+    }
+
+    @lombok.Value
+    private static class Ranking {
+        long computedAt;
+        List<Long> filmIds;
+    }
+}
@@ -6,9 +6,12 @@ import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.model.enums.SortType;
+import ru.yandex.practicum.filmorate.storage.bitmap.IdBitmap;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Component("inMemoryFilmStorage")
@@ -27,7 +30,7 @@ public class InMemoryFilmStorage implements FilmStorage {
                 .description(film.getDescription())
                 .duration(film.getDuration())
                 .releaseDate(film.getReleaseDate())
-                .likes(new HashSet<>())
+                .likes(new IdBitmap())
                 .build();
 
         log.info("Добавлен фильм: " + newFilm.getName());
@@ -64,6 +67,28 @@ public class InMemoryFilmStorage implements FilmStorage {
         return films.values();
     }
 
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilms(long afterId, int limit) {
+        return films.values().stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(Comparator.comparing(Film::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> consumer) {
+        films.values().forEach(consumer);
+    }
+
     @Override
     public boolean filmExist(Long id) {
         return films.containsKey(id);
@@ -116,6 +141,11 @@ public class InMemoryFilmStorage implements FilmStorage {
         return Optional.empty();
     }
 
+    @Override
+    public String getReferenceDataVersion() {
+        return "0";
+    }
+
     @Override
     public void deleteFilmById(Long id) {
 
@@ -189,17 +219,68 @@ public class InMemoryFilmStorage implements FilmStorage {
         return new ArrayList<>();
     }
 
+    @Override
+    public List<Long> getPrecomputedRecommendation(long userId) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<Long> computeRecommendation(long userId) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<Long> getRatedFilmIds(long userId) {
+        return films.values().stream()
+                .filter(film -> film.getLikes() != null && film.getLikes().contains(userId))
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Collection<Film> getPopularFilms(Integer count, Integer genre, Integer year) {
         return null;
     }
 
+    @Override
+    public Collection<Film> getTrendingFilms(Duration window, int count) {
+        return new ArrayList<>();
+    }
+
     public Collection<Film> searchFilms(String query, List<String> by) {
         return new ArrayList<>();
     }
 
+    @Override
+    public List<Suggestion> getSuggestions(String prefix, int count) {
+        return new ArrayList<>();
+    }
+
     @Override
     public Collection<Film> getCommonFilms(Long userId, Long otherId) {
-        return null;
+        return getCommonFilms(List.of(userId, otherId));
+    }
+
+    @Override
+    public Collection<Film> getCommonFilms(Collection<Long> userIds) {
+        return films.values().stream()
+                .filter(film -> film.getLikes() != null && film.getLikes().containsAll(userIds))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Оценки здесь не хранятся, поэтому сходство — косинус векторов из одних лайков.
+     */
+    @Override
+    public TasteCompatibility getCompatibility(Long userId, Long otherId) {
+        int userFilms = getRatedFilmIds(userId).size();
+        int otherFilms = getRatedFilmIds(otherId).size();
+        int commonFilms = getCommonFilms(userId, otherId).size();
+        return TasteCompatibility.builder()
+                .userId(userId)
+                .otherId(otherId)
+                .similarity(commonFilms == 0 ? 0 : commonFilms / Math.sqrt((double) userFilms * otherFilms))
+                .commonFilms(commonFilms)
+                .build();
     }
 }
@@ -0,0 +1,318 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Оценённые пользователем фильмы — отсортированный массив id и параллельный массив оценок на пользователя.
+ * Массивы при изменении заменяются новыми, поэтому выданные наружу массивы не меняются, а пересечение списков
+ * нескольких пользователей сводится к последовательным слияниям начиная с самого короткого.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LikedFilmsIndex {
+    private static final long[] NO_FILMS = new long[0];
+    private static final Ratings NO_RATINGS = new Ratings(NO_FILMS, new byte[0]);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Ratings> likedFilms = new HashMap<>();
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, Ratings> loaded = new HashMap<>();
+        List<long[]> row = new ArrayList<>();
+        long[] current = {0};
+        jdbcTemplate.query("select user_id, film_id, mark from film_likes order by user_id, film_id", resultSet -> {
+            long userId = resultSet.getLong("user_id");
+            if (userId != current[0] && !row.isEmpty()) {
+                loaded.put(current[0], toRatings(row));
+                row.clear();
+            }
+            current[0] = userId;
+            row.add(new long[]{resultSet.getLong("film_id"), resultSet.getInt("mark")});
+        });
+        if (!row.isEmpty()) {
+            loaded.put(current[0], toRatings(row));
+        }
+
+        lock.writeLock().lock();
+        try {
+            likedFilms.clear();
+            likedFilms.putAll(loaded);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс оценённых фильмов построен, пользователей: " + loaded.size());
+    }
+
+    public void addLike(long filmId, long userId, int mark) {
+        lock.writeLock().lock();
+        try {
+            Ratings ratings = likedFilms.getOrDefault(userId, NO_RATINGS);
+            int index = Arrays.binarySearch(ratings.films, filmId);
+            if (index >= 0) {
+                if (ratings.marks[index] != mark) {
+                    byte[] marks = ratings.marks.clone();
+                    marks[index] = (byte) mark;
+                    likedFilms.put(userId, new Ratings(ratings.films, marks));
+                }
+                return;
+            }
+            int position = -index - 1;
+            int size = ratings.films.length;
+            long[] films = new long[size + 1];
+            byte[] marks = new byte[size + 1];
+            System.arraycopy(ratings.films, 0, films, 0, position);
+            System.arraycopy(ratings.marks, 0, marks, 0, position);
+            films[position] = filmId;
+            marks[position] = (byte) mark;
+            System.arraycopy(ratings.films, position, films, position + 1, size - position);
+            System.arraycopy(ratings.marks, position, marks, position + 1, size - position);
+            likedFilms.put(userId, new Ratings(films, marks));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            removeFromUser(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаление фильма проходит по всем пользователям: фильмы удаляются редко, а обратного индекса
+     * фильм → пользователи здесь нет.
+     */
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            for (Long userId : new ArrayList<>(likedFilms.keySet())) {
+                removeFromUser(userId, filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            likedFilms.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Отсортированные id оценённых пользователем фильмов. Массив не должен изменяться вызывающим.
+     */
+    public long[] getLikedFilms(long userId) {
+        lock.readLock().lock();
+        try {
+            return likedFilms.getOrDefault(userId, NO_RATINGS).films;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Версия оценок пользователя: меняется при каждом изменении его оценок, в том числе при удалении.
+     */
+    public long getVersion(long userId) {
+        lock.readLock().lock();
+        try {
+            return likedFilms.getOrDefault(userId, NO_RATINGS).version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Id фильмов, которым пользователь поставил оценку не ниже minMark, по возрастанию.
+     */
+    public List<Long> getFilmsWithMarkAtLeast(long userId, int minMark) {
+        Ratings ratings;
+        lock.readLock().lock();
+        try {
+            ratings = likedFilms.getOrDefault(userId, NO_RATINGS);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Long> films = new ArrayList<>();
+        for (int i = 0; i < ratings.films.length; i++) {
+            if (ratings.marks[i] >= minMark) {
+                films.add(ratings.films[i]);
+            }
+        }
+        return films;
+    }
+
+    /**
+     * Сходство вкусов двух пользователей по их оценкам. Считается одним встречным проходом по массивам без
+     * выделения памяти: по общим фильмам накапливаются суммы оценок и их произведений, а средние и разброс
+     * оценок каждого пользователя берутся по всем его оценкам. Если у обоих оценки различаются, результат —
+     * косинус центрированных векторов (корреляция Пирсона со средними по всему профилю), иначе — косинус
+     * исходных оценок. Нормы считаются по всему профилю, поэтому пара с парой общих фильмов из сотни
+     * оценённых получает низкое сходство.
+     */
+    public RatingOverlap getOverlap(long userId, long otherId) {
+        Ratings user;
+        Ratings other;
+        lock.readLock().lock();
+        try {
+            user = likedFilms.getOrDefault(userId, NO_RATINGS);
+            other = likedFilms.getOrDefault(otherId, NO_RATINGS);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int common = 0;
+        long productSum = 0;
+        long userSum = 0;
+        long otherSum = 0;
+        int i = 0;
+        int j = 0;
+        while (i < user.films.length && j < other.films.length) {
+            if (user.films[i] == other.films[j]) {
+                productSum += user.marks[i] * other.marks[j];
+                userSum += user.marks[i];
+                otherSum += other.marks[j];
+                common++;
+                i++;
+                j++;
+            } else if (user.films[i] < other.films[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        if (common == 0) {
+            return new RatingOverlap(0, 0);
+        }
+
+        long userSpread = user.films.length * user.markSquareSum - user.markSum * user.markSum;
+        long otherSpread = other.films.length * other.markSquareSum - other.markSum * other.markSum;
+        double similarity;
+        if (userSpread > 0 && otherSpread > 0) {
+            double userMean = (double) user.markSum / user.films.length;
+            double otherMean = (double) other.markSum / other.films.length;
+            double covariance = productSum - otherMean * userSum - userMean * otherSum + common * userMean * otherMean;
+            similarity = covariance / Math.sqrt((double) userSpread / user.films.length
+                    * otherSpread / other.films.length);
+        } else {
+            similarity = productSum / Math.sqrt((double) user.markSquareSum * other.markSquareSum);
+        }
+        return new RatingOverlap(Math.max(-1, Math.min(1, similarity)), common);
+    }
+
+    /**
+     * Фильмы, оценённые каждым из пользователей, по возрастанию id.
+     */
+    public long[] getCommonFilms(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return NO_FILMS;
+        }
+        List<long[]> lists = new ArrayList<>();
+        for (Long userId : userIds) {
+            lists.add(getLikedFilms(userId));
+        }
+        lists.sort(Comparator.comparingInt(films -> films.length));
+
+        long[] common = lists.get(0);
+        int count = common.length;
+        for (int list = 1; list < lists.size() && count > 0; list++) {
+            long[] other = lists.get(list);
+            long[] merged = common == lists.get(0) ? new long[count] : common;
+            int mergedCount = 0;
+            int i = 0;
+            int j = 0;
+            while (i < count && j < other.length) {
+                if (common[i] == other[j]) {
+                    merged[mergedCount++] = common[i];
+                    i++;
+                    j++;
+                } else if (common[i] < other[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            common = merged;
+            count = mergedCount;
+        }
+        return count == common.length && common != lists.get(0) ? common : Arrays.copyOf(common, count);
+    }
+
+    private void removeFromUser(long userId, long filmId) {
+        Ratings ratings = likedFilms.get(userId);
+        if (ratings == null) {
+            return;
+        }
+        int index = Arrays.binarySearch(ratings.films, filmId);
+        if (index < 0) {
+            return;
+        }
+        int size = ratings.films.length;
+        if (size == 1) {
+            likedFilms.remove(userId);
+            return;
+        }
+        long[] films = new long[size - 1];
+        byte[] marks = new byte[size - 1];
+        System.arraycopy(ratings.films, 0, films, 0, index);
+        System.arraycopy(ratings.marks, 0, marks, 0, index);
+        System.arraycopy(ratings.films, index + 1, films, index, size - index - 1);
+        System.arraycopy(ratings.marks, index + 1, marks, index, size - index - 1);
+        likedFilms.put(userId, new Ratings(films, marks));
+    }
+
+    private static Ratings toRatings(List<long[]> row) {
+        long[] films = new long[row.size()];
+        byte[] marks = new byte[row.size()];
+        for (int i = 0; i < row.size(); i++) {
+            films[i] = row.get(i)[0];
+            marks[i] = (byte) row.get(i)[1];
+        }
+        return new Ratings(films, marks);
+    }
+
+    /**
+     * Неизменяемый снимок оценок пользователя с суммами оценок и их квадратов для расчёта сходства.
+     */
+    private static final class Ratings {
+        private static final AtomicLong VERSIONS = new AtomicLong();
+
+        final long[] films;
+        final byte[] marks;
+        final long markSum;
+        final long markSquareSum;
+        final long version = VERSIONS.incrementAndGet();
+
+        Ratings(long[] films, byte[] marks) {
+            this.films = films;
+            this.marks = marks;
+            long sum = 0;
+            long squareSum = 0;
+            for (byte mark : marks) {
+                sum += mark;
+                squareSum += mark * mark;
+            }
+            this.markSum = sum;
+            this.markSquareSum = squareSum;
+        }
+    }
+}
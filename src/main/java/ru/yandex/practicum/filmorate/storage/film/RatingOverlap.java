@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+@lombok.Value
+public class RatingOverlap {
+    double similarity;
+    int commonFilms;
+}
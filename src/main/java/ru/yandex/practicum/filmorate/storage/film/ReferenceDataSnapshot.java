@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Рейтинги MPA и жанры, загруженные один раз при старте. Справочники заполняются из data.sql
+ * и во время работы не меняются, поэтому поиск по id — это чтение из массива.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReferenceDataSnapshot {
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), Collections.emptyList());
+
+    @PostConstruct
+    public void load() {
+        List<Mpa> mpa = jdbcTemplate.query("select * from mpa order by mpa_id", (resultSet, rowNum) ->
+                new Mpa(resultSet.getInt("mpa_id"), resultSet.getString("name"),
+                        resultSet.getString("description")));
+        List<Genre> genres = jdbcTemplate.query("select * from genres order by genre_id", (resultSet, rowNum) ->
+                new Genre(resultSet.getInt("genre_id"), resultSet.getString("name")));
+        snapshot = new Snapshot(mpa, genres);
+        log.info("Загружены справочники: рейтингов " + mpa.size() + ", жанров " + genres.size());
+    }
+
+    public List<Mpa> getAllMpa() {
+        return snapshot.mpa;
+    }
+
+    public Optional<Mpa> getMpaById(int id) {
+        Mpa[] mpaById = snapshot.mpaById;
+        return id > 0 && id < mpaById.length ? Optional.ofNullable(mpaById[id]) : Optional.empty();
+    }
+
+    public List<Genre> getAllGenres() {
+        return snapshot.genres;
+    }
+
+    public Optional<Genre> getGenreById(int id) {
+        Genre[] genresById = snapshot.genresById;
+        return id > 0 && id < genresById.length ? Optional.ofNullable(genresById[id]) : Optional.empty();
+    }
+
+    public String getVersion() {
+        return snapshot.version;
+    }
+
+    private static class Snapshot {
+        final List<Mpa> mpa;
+        final List<Genre> genres;
+        final Mpa[] mpaById;
+        final Genre[] genresById;
+        final String version;
+
+        Snapshot(List<Mpa> mpa, List<Genre> genres) {
+            this.mpa = List.copyOf(mpa);
+            this.genres = List.copyOf(genres);
+            mpaById = new Mpa[mpa.stream().mapToInt(Mpa::getId).max().orElse(0) + 1];
+            mpa.forEach(item -> mpaById[item.getId()] = item);
+            genresById = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(0) + 1];
+            genres.forEach(item -> genresById[item.getId()] = item);
+            version = DigestUtils.md5DigestAsHex((mpa + "|" + genres).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
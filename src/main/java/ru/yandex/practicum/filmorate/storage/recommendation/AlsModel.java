@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+/**
+ * Обученные латентные факторы: строка пользователя или фильма лежит подряд в плотном float-массиве,
+ * предсказанная оценка — средняя оценка плюс сдвиг фильма плюс скалярное произведение факторов.
+ */
+public class AlsModel {
+    private final int factors;
+    private final float mean;
+    private final float regularization;
+    private final float[] itemBias;
+    private final float[] userFactors;
+    private final float[] itemFactors;
+
+    AlsModel(int factors, float mean, float regularization, float[] itemBias, float[] userFactors,
+             float[] itemFactors) {
+        this.factors = factors;
+        this.mean = mean;
+        this.regularization = regularization;
+        this.itemBias = itemBias;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+    }
+
+    public int getFactors() {
+        return factors;
+    }
+
+    public int getUserCount() {
+        return userFactors.length / factors;
+    }
+
+    public int getItemCount() {
+        return itemFactors.length / factors;
+    }
+
+    public long getFactorBytes() {
+        return (long) (userFactors.length + itemFactors.length + itemBias.length) * Float.BYTES;
+    }
+
+    public float predict(int user, int item) {
+        return mean + itemBias[item] + dot(userFactors, user * factors, itemFactors, item * factors, factors);
+    }
+
+    public float predict(float[] userVector, int item) {
+        return mean + itemBias[item] + dot(userVector, 0, itemFactors, item * factors, factors);
+    }
+
+    /**
+     * Факторы пользователя по его текущим оценкам при зафиксированных факторах фильмов — один шаг ALS.
+     * Позволяет учесть оценки, поставленные после обучения, и пользователей, которых не было в обучающей выборке.
+     */
+    public float[] foldIn(int[] items, float[] ratings) {
+        double[] system = new double[factors * factors];
+        double[] rhs = new double[factors];
+        AlsTrainer.accumulate(itemFactors, factors, items, ratings, 0, items.length, mean, itemBias, system, rhs);
+        AlsTrainer.regularize(system, factors, regularization * items.length);
+        float[] vector = new float[factors];
+        AlsTrainer.solve(system, rhs, factors, vector, 0);
+        return vector;
+    }
+
+    static float dot(float[] left, int leftOffset, float[] right, int rightOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += left[leftOffset + i] * right[rightOffset + i];
+        }
+        return sum;
+    }
+}
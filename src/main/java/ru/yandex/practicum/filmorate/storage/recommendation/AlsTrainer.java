@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Обучение факторной модели чередующимися наименьшими квадратами (ALS) на явных оценках.
+ * На каждой итерации при фиксированных факторах фильмов независимо решаются системы k×k для всех
+ * пользователей, затем наоборот; строки обрабатываются параллельно в ForkJoinPool. Регуляризация
+ * пропорциональна числу оценок строки (weighted-λ), система решается разложением Холецкого.
+ * Факторы описывают отклонение оценки от базовой: средней оценки плюс сдвига фильма, сжатого к нулю
+ * для фильмов с малым числом оценок.
+ */
+public class AlsTrainer {
+    private static final long SEED = 42;
+    private static final float BIAS_SHRINKAGE = 2;
+
+    private final int factors;
+    private final int iterations;
+    private final float regularization;
+    private final int parallelism;
+
+    public AlsTrainer(int factors, int iterations, float regularization, int parallelism) {
+        this.factors = factors;
+        this.iterations = iterations;
+        this.regularization = regularization;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Обучает модель на оценках, заданных тройками (users[j], items[j], ratings[j]).
+     */
+    public AlsModel train(int userCount, int itemCount, int[] users, int[] items, float[] ratings) {
+        double sum = 0;
+        for (float rating : ratings) {
+            sum += rating;
+        }
+        float mean = ratings.length == 0 ? 0 : (float) (sum / ratings.length);
+        float[] itemBias = new float[itemCount];
+        int[] itemRatings = new int[itemCount];
+        for (int j = 0; j < ratings.length; j++) {
+            itemBias[items[j]] += ratings[j] - mean;
+            itemRatings[items[j]]++;
+        }
+        for (int item = 0; item < itemCount; item++) {
+            itemBias[item] /= itemRatings[item] + BIAS_SHRINKAGE;
+        }
+
+        Csr byUser = Csr.of(userCount, users, items, ratings);
+        Csr byItem = Csr.of(itemCount, items, users, ratings);
+        float[] userFactors = new float[userCount * factors];
+        float[] itemFactors = new float[itemCount * factors];
+        Random random = new Random(SEED);
+        for (int i = 0; i < itemFactors.length; i++) {
+            itemFactors[i] = (float) (random.nextGaussian() * 0.1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                solveAll(pool, byUser, itemFactors, userFactors, mean, itemBias, null);
+                solveAll(pool, byItem, userFactors, itemFactors, mean, null, itemBias);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return new AlsModel(factors, mean, regularization, itemBias, userFactors, itemFactors);
+    }
+
+    /**
+     * Пересчитывает факторы всех строк target. Сдвиг фильма берётся из columnBias, когда строки — пользователи,
+     * и из rowBias, когда строки — сами фильмы.
+     */
+    private void solveAll(ForkJoinPool pool, Csr rows, float[] fixed, float[] target, float mean,
+                          float[] columnBias, float[] rowBias) {
+        try {
+            pool.submit(() -> IntStream.range(0, rows.size()).parallel().forEach(row -> {
+                int from = rows.offsets[row];
+                int to = rows.offsets[row + 1];
+                if (from == to) {
+                    return;
+                }
+                double[] system = new double[factors * factors];
+                double[] rhs = new double[factors];
+                float baseline = rowBias == null ? mean : mean + rowBias[row];
+                accumulate(fixed, factors, rows.columns, rows.values, from, to, baseline, columnBias, system, rhs);
+                regularize(system, factors, regularization * (to - from));
+                solve(system, rhs, factors, target, row * factors);
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обучение модели прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка при обучении модели", e.getCause());
+        }
+    }
+
+    /**
+     * Накапливает Σ y·yᵀ (только нижний треугольник) и Σ (r − базовая оценка)·y по оценкам строки.
+     */
+    static void accumulate(float[] fixed, int factors, int[] columns, float[] values, int from, int to,
+                           float baseline, float[] columnBias, double[] system, double[] rhs) {
+        for (int j = from; j < to; j++) {
+            int offset = columns[j] * factors;
+            double rating = values[j] - baseline - (columnBias == null ? 0 : columnBias[columns[j]]);
+            for (int a = 0; a < factors; a++) {
+                double ya = fixed[offset + a];
+                rhs[a] += rating * ya;
+                int rowOffset = a * factors;
+                for (int b = 0; b <= a; b++) {
+                    system[rowOffset + b] += ya * fixed[offset + b];
+                }
+            }
+        }
+    }
+
+    static void regularize(double[] system, int factors, double lambda) {
+        for (int a = 0; a < factors; a++) {
+            system[a * factors + a] += lambda;
+        }
+    }
+
+    /**
+     * Решает A·x = b для симметричной положительно определённой A (заполнен нижний треугольник)
+     * разложением Холецкого на месте и пишет x в target с позиции offset.
+     */
+    static void solve(double[] system, double[] rhs, int factors, float[] target, int offset) {
+        for (int a = 0; a < factors; a++) {
+            for (int b = 0; b <= a; b++) {
+                double sum = system[a * factors + b];
+                for (int c = 0; c < b; c++) {
+                    sum -= system[a * factors + c] * system[b * factors + c];
+                }
+                if (a == b) {
+                    system[a * factors + a] = Math.sqrt(Math.max(sum, 1e-12));
+                } else {
+                    system[a * factors + b] = sum / system[b * factors + b];
+                }
+            }
+        }
+        for (int a = 0; a < factors; a++) {
+            double sum = rhs[a];
+            for (int c = 0; c < a; c++) {
+                sum -= system[a * factors + c] * rhs[c];
+            }
+            rhs[a] = sum / system[a * factors + a];
+        }
+        for (int a = factors - 1; a >= 0; a--) {
+            double sum = rhs[a];
+            for (int c = a + 1; c < factors; c++) {
+                sum -= system[c * factors + a] * rhs[c];
+            }
+            rhs[a] = sum / system[a * factors + a];
+            target[offset + a] = (float) rhs[a];
+        }
+    }
+
+    /**
+     * Оценки, сгруппированные по строкам: значения строки row лежат в columns/values с offsets[row] по offsets[row + 1].
+     */
+    private static class Csr {
+        final int[] offsets;
+        final int[] columns;
+        final float[] values;
+
+        Csr(int[] offsets, int[] columns, float[] values) {
+            this.offsets = offsets;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        int size() {
+            return offsets.length - 1;
+        }
+
+        static Csr of(int rowCount, int[] rows, int[] columns, float[] values) {
+            int[] offsets = new int[rowCount + 1];
+            for (int row : rows) {
+                offsets[row + 1]++;
+            }
+            for (int row = 0; row < rowCount; row++) {
+                offsets[row + 1] += offsets[row];
+            }
+            int[] next = offsets.clone();
+            int[] sortedColumns = new int[columns.length];
+            float[] sortedValues = new float[values.length];
+            for (int j = 0; j < rows.length; j++) {
+                int position = next[rows[j]]++;
+                sortedColumns[position] = columns[j];
+                sortedValues[position] = values[j];
+            }
+            return new Csr(offsets, sortedColumns, sortedValues);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmCooccurrenceCheckJob {
+    private final FilmCooccurrenceMatrix cooccurrenceMatrix;
+
+    @Value("${filmorate.recommendation.strategy:ITEM_BASED}")
+    private RecommendationStrategy recommendationStrategy;
+
+    @Scheduled(cron = "${filmorate.film-cooccurrence.check-cron:0 15 4 * * *}")
+    public void check() {
+        if (recommendationStrategy != RecommendationStrategy.COOCCURRENCE) {
+            return;
+        }
+        int mismatchCount = cooccurrenceMatrix.countMismatches();
+        if (mismatchCount == 0) {
+            log.info("Матрица совместных оценок согласована с film_likes");
+            return;
+        }
+        cooccurrenceMatrix.rebuild();
+        log.warn("Найдено расхождений в матрице совместных оценок: " + mismatchCount + ", матрица пересобрана");
+    }
+}
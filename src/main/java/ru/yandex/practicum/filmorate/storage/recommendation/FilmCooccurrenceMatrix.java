@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сколько пользователей положительно оценили (6–10) одновременно оба фильма. На диагонали — число
+ * положительных оценок самого фильма. Матрица обновляется при каждой оценке: меняются только счётчики
+ * между фильмом и остальными положительно оценёнными фильмами того же пользователя. Строки разложены
+ * по полосам блокировок, поэтому оценки разных фильмов не ждут друг друга.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmCooccurrenceMatrix {
+    public static final int MIN_POSITIVE_MARK = 6;
+
+    private static final int STRIPES = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Lock[] stripes = createStripes();
+    private volatile Map<Long, LongIntHashMap> rows = new ConcurrentHashMap<>();
+
+    @Value("${filmorate.recommendation.strategy:ITEM_BASED}")
+    private RecommendationStrategy recommendationStrategy;
+
+    @PostConstruct
+    public void rebuild() {
+        if (recommendationStrategy != RecommendationStrategy.COOCCURRENCE) {
+            return;
+        }
+        rows = load();
+        log.info("Матрица совместных оценок построена, фильмов: " + rows.size());
+    }
+
+    public static boolean isPositive(Integer mark) {
+        return mark != null && mark >= MIN_POSITIVE_MARK;
+    }
+
+    /**
+     * Применяет изменение оценки, если фильм перешёл в положительные или перестал быть положительным.
+     * otherPositiveFilms — остальные положительно оценённые пользователем фильмы.
+     */
+    public void applyMark(long filmId, Integer oldMark, Integer newMark, Collection<Long> otherPositiveFilms) {
+        boolean wasPositive = isPositive(oldMark);
+        boolean positive = isPositive(newMark);
+        if (wasPositive == positive) {
+            return;
+        }
+        int delta = positive ? 1 : -1;
+        add(filmId, filmId, delta);
+        for (Long otherFilmId : otherPositiveFilms) {
+            if (otherFilmId != filmId) {
+                add(filmId, otherFilmId, delta);
+                add(otherFilmId, filmId, delta);
+            }
+        }
+    }
+
+    /**
+     * Убирает вклад пользователя, у которого были положительно оценены фильмы positiveFilms.
+     */
+    public void removeUser(Collection<Long> positiveFilms) {
+        for (Long filmId : positiveFilms) {
+            for (Long otherFilmId : positiveFilms) {
+                add(filmId, otherFilmId, -1);
+            }
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        LongIntHashMap row;
+        Lock stripe = stripe(filmId);
+        stripe.lock();
+        try {
+            row = rows.remove(filmId);
+        } finally {
+            stripe.unlock();
+        }
+        if (row == null) {
+            return;
+        }
+        row.forEach((otherFilmId, count) -> {
+            if (otherFilmId != filmId) {
+                add(otherFilmId, filmId, -count);
+            }
+        });
+    }
+
+    public int getCount(long filmId, long otherFilmId) {
+        Lock stripe = stripe(filmId);
+        stripe.lock();
+        try {
+            LongIntHashMap row = rows.get(filmId);
+            return row == null ? 0 : row.get(otherFilmId);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Фильмы, которые чаще всего оценивали вместе с positiveFilms. Вклад пары нормирован как косинус
+     * бинарных векторов: совместные оценки делятся на корень из произведения числа оценок каждого фильма.
+     */
+    public List<Long> recommend(Collection<Long> positiveFilms, Set<Long> excludedFilms, int count) {
+        Map<Long, Double> scores = new HashMap<>();
+        for (Long filmId : positiveFilms) {
+            LongIntHashMap row = copyRow(filmId);
+            if (row == null) {
+                continue;
+            }
+            int filmCount = row.get(filmId);
+            row.forEach((otherFilmId, pairCount) -> {
+                if (!excludedFilms.contains(otherFilmId) && filmCount > 0) {
+                    scores.merge(otherFilmId, pairCount / Math.sqrt(filmCount), Double::sum);
+                }
+            });
+        }
+        scores.replaceAll((filmId, score) -> {
+            int filmCount = getCount(filmId, filmId);
+            return filmCount > 0 ? score / Math.sqrt(filmCount) : 0;
+        });
+
+        List<Long> recommended = new ArrayList<>();
+        scores.forEach((filmId, score) -> {
+            if (score > 0) {
+                recommended.add(filmId);
+            }
+        });
+        recommended.sort(Comparator.comparing((Long filmId) -> scores.get(filmId)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return recommended.size() > count ? new ArrayList<>(recommended.subList(0, count)) : recommended;
+    }
+
+    /**
+     * Сверяет матрицу с полной пересборкой по film_likes и возвращает число расходящихся ячеек.
+     */
+    public int countMismatches() {
+        Map<Long, LongIntHashMap> expected = load();
+        int[] mismatches = new int[1];
+        Set<Long> filmIds = new HashSet<>(expected.keySet());
+        filmIds.addAll(rows.keySet());
+        for (Long filmId : filmIds) {
+            LongIntHashMap actualRow = copyRow(filmId);
+            LongIntHashMap expectedRow = expected.getOrDefault(filmId, new LongIntHashMap());
+            LongIntHashMap actual = actualRow == null ? new LongIntHashMap() : actualRow;
+            expectedRow.forEach((otherFilmId, count) -> {
+                if (actual.get(otherFilmId) != count) {
+                    mismatches[0]++;
+                }
+            });
+            actual.forEach((otherFilmId, count) -> {
+                if (expectedRow.get(otherFilmId) == 0) {
+                    mismatches[0]++;
+                }
+            });
+        }
+        return mismatches[0];
+    }
+
+    private Map<Long, LongIntHashMap> load() {
+        Map<Long, List<Long>> userFilms = new HashMap<>();
+        jdbcTemplate.query("select user_id, film_id from film_likes where mark >= ?", resultSet -> {
+            userFilms.computeIfAbsent(resultSet.getLong("user_id"), id -> new ArrayList<>())
+                    .add(resultSet.getLong("film_id"));
+        }, MIN_POSITIVE_MARK);
+
+        Map<Long, LongIntHashMap> loaded = new ConcurrentHashMap<>();
+        for (List<Long> films : userFilms.values()) {
+            for (Long filmId : films) {
+                LongIntHashMap row = loaded.computeIfAbsent(filmId, id -> new LongIntHashMap());
+                for (Long otherFilmId : films) {
+                    row.addTo(otherFilmId, 1);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void add(long filmId, long otherFilmId, int delta) {
+        Lock stripe = stripe(filmId);
+        stripe.lock();
+        try {
+            LongIntHashMap row = rows.computeIfAbsent(filmId, id -> new LongIntHashMap());
+            row.addTo(otherFilmId, delta);
+            if (row.size() == 0) {
+                rows.remove(filmId);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private LongIntHashMap copyRow(long filmId) {
+        Lock stripe = stripe(filmId);
+        stripe.lock();
+        try {
+            LongIntHashMap row = rows.get(filmId);
+            return row == null ? null : row.copy();
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private Lock stripe(long filmId) {
+        return stripes[(int) ((filmId ^ (filmId >>> 32)) & (STRIPES - 1))];
+    }
+
+    private static Lock[] createStripes() {
+        Lock[] locks = new Lock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+}
@@ -0,0 +1,319 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рекомендации по похожести фильмов. Похожесть двух фильмов — косинус между векторами их оценок,
+ * отсчитанных от середины шкалы, так что низкие оценки тянут сходство вниз. Для каждого фильма хранятся
+ * только лучшие соседи. Оценки применяются сразу, а строки соседей затронутых фильмов пересчитываются
+ * планировщиком или при запросе рекомендаций пользователем, который оценивал эти фильмы.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ItemBasedRecommender {
+    private static final double NEUTRAL_MARK = 5.5;
+    private static final Neighbours NO_NEIGHBOURS = new Neighbours(new long[0], new float[0]);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, RatingVector> userRatings = new HashMap<>();
+    private final Map<Long, RatingVector> filmRatings = new HashMap<>();
+    private final Map<Long, Neighbours> neighbours = new HashMap<>();
+    private final Set<Long> dirtyFilms = new HashSet<>();
+
+    @Value("${filmorate.recommendation.neighbours:50}")
+    private int neighbourCount;
+    @Value("${filmorate.recommendation.strategy:ITEM_BASED}")
+    private RecommendationStrategy recommendationStrategy;
+
+    @PostConstruct
+    @Scheduled(cron = "${filmorate.recommendation.rebuild-cron:0 30 4 * * *}")
+    public void rebuild() {
+        if (recommendationStrategy != RecommendationStrategy.ITEM_BASED) {
+            return;
+        }
+        Map<Long, RatingVector> loadedUsers = new HashMap<>();
+        Map<Long, RatingVector> loadedFilms = new HashMap<>();
+        jdbcTemplate.query("select film_id, user_id, mark from film_likes", resultSet -> {
+            long filmId = resultSet.getLong("film_id");
+            long userId = resultSet.getLong("user_id");
+            int mark = resultSet.getInt("mark");
+            loadedUsers.computeIfAbsent(userId, id -> new RatingVector()).put(filmId, mark);
+            loadedFilms.computeIfAbsent(filmId, id -> new RatingVector()).put(userId, mark);
+        });
+        Map<Long, Neighbours> computed = computeNeighbours(loadedUsers, loadedFilms, loadedFilms.keySet());
+
+        lock.writeLock().lock();
+        try {
+            userRatings.clear();
+            userRatings.putAll(loadedUsers);
+            filmRatings.clear();
+            filmRatings.putAll(loadedFilms);
+            neighbours.clear();
+            neighbours.putAll(computed);
+            dirtyFilms.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Матрица похожести фильмов построена, фильмов: " + loadedFilms.size()
+                + ", пользователей: " + loadedUsers.size());
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendation.refresh-interval:PT30S}")
+    public void refresh() {
+        Set<Long> films;
+        lock.writeLock().lock();
+        try {
+            films = new HashSet<>(dirtyFilms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        refresh(films);
+    }
+
+    public void putMark(long filmId, long userId, int mark) {
+        lock.writeLock().lock();
+        try {
+            RatingVector ratings = userRatings.computeIfAbsent(userId, id -> new RatingVector());
+            ratings.put(filmId, mark);
+            filmRatings.computeIfAbsent(filmId, id -> new RatingVector()).put(userId, mark);
+            markDirty(ratings);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeMark(long filmId, long userId) {
+        lock.writeLock().lock();
+        try {
+            RatingVector ratings = userRatings.get(userId);
+            if (ratings == null) {
+                return;
+            }
+            markDirty(ratings);
+            ratings.remove(filmId);
+            removeFilmRating(filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            RatingVector raters = filmRatings.remove(filmId);
+            neighbours.remove(filmId);
+            dirtyFilms.remove(filmId);
+            if (raters == null) {
+                return;
+            }
+            for (int i = 0; i < raters.size(); i++) {
+                RatingVector ratings = userRatings.get(raters.idAt(i));
+                ratings.remove(filmId);
+                markDirty(ratings);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            RatingVector ratings = userRatings.remove(userId);
+            if (ratings == null) {
+                return;
+            }
+            markDirty(ratings);
+            for (int i = 0; i < ratings.size(); i++) {
+                removeFilmRating(ratings.idAt(i), userId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> recommend(long userId, int count) {
+        Set<Long> staleRows = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            RatingVector ratings = userRatings.get(userId);
+            if (ratings == null) {
+                return Collections.emptyList();
+            }
+            for (int i = 0; i < ratings.size(); i++) {
+                if (dirtyFilms.contains(ratings.idAt(i))) {
+                    staleRows.add(ratings.idAt(i));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!staleRows.isEmpty()) {
+            refresh(staleRows);
+        }
+
+        Map<Long, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            RatingVector ratings = userRatings.get(userId);
+            if (ratings == null) {
+                return Collections.emptyList();
+            }
+            for (int i = 0; i < ratings.size(); i++) {
+                double deviation = ratings.markAt(i) - NEUTRAL_MARK;
+                Neighbours row = neighbours.getOrDefault(ratings.idAt(i), NO_NEIGHBOURS);
+                for (int j = 0; j < row.filmIds.length; j++) {
+                    long candidate = row.filmIds[j];
+                    if (ratings.get(candidate) == 0 && filmRatings.containsKey(candidate)) {
+                        scores.merge(candidate, row.similarities[j] * deviation, Double::sum);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Long> recommended = new ArrayList<>();
+        scores.forEach((filmId, score) -> {
+            if (score > 0) {
+                recommended.add(filmId);
+            }
+        });
+        recommended.sort(Comparator.comparing((Long filmId) -> scores.get(filmId)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return recommended.size() > count ? new ArrayList<>(recommended.subList(0, count)) : recommended;
+    }
+
+    private void refresh(Set<Long> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Neighbours> computed;
+        lock.writeLock().lock();
+        try {
+            // Оценка, пришедшая во время пересчёта, снова пометит строку.
+            dirtyFilms.removeAll(films);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lock.readLock().lock();
+        try {
+            computed = computeNeighbours(userRatings, filmRatings, films);
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long filmId : films) {
+                Neighbours row = computed.get(filmId);
+                if (row != null && filmRatings.containsKey(filmId)) {
+                    neighbours.put(filmId, row);
+                } else {
+                    neighbours.remove(filmId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Пересчитаны соседи фильмов: " + films.size());
+    }
+
+    private void markDirty(RatingVector ratings) {
+        for (int i = 0; i < ratings.size(); i++) {
+            dirtyFilms.add(ratings.idAt(i));
+        }
+    }
+
+    private void removeFilmRating(long filmId, long userId) {
+        RatingVector raters = filmRatings.get(filmId);
+        if (raters == null) {
+            return;
+        }
+        raters.remove(userId);
+        if (raters.size() == 0) {
+            filmRatings.remove(filmId);
+        }
+    }
+
+    /**
+     * Строка матрицы для фильма i считается обходом его оценщиков и их оценок: скалярные произведения
+     * накапливаются в плотном массиве по индексу фильма, затем из затронутых фильмов выбираются лучшие соседи.
+     */
+    private Map<Long, Neighbours> computeNeighbours(Map<Long, RatingVector> users, Map<Long, RatingVector> films,
+                                                    Collection<Long> rows) {
+        long[] filmIds = films.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        double[] norms = new double[filmIds.length];
+        for (int i = 0; i < filmIds.length; i++) {
+            RatingVector raters = films.get(filmIds[i]);
+            for (int j = 0; j < raters.size(); j++) {
+                double deviation = raters.markAt(j) - NEUTRAL_MARK;
+                norms[i] += deviation * deviation;
+            }
+            norms[i] = Math.sqrt(norms[i]);
+        }
+
+        double[] dots = new double[filmIds.length];
+        int[] touched = new int[filmIds.length];
+        Map<Long, Neighbours> computed = new HashMap<>();
+        for (Long filmId : rows) {
+            int row = Arrays.binarySearch(filmIds, filmId);
+            if (row < 0) {
+                continue;
+            }
+            int touchedCount = 0;
+            RatingVector raters = films.get(filmId);
+            for (int i = 0; i < raters.size(); i++) {
+                double deviation = raters.markAt(i) - NEUTRAL_MARK;
+                RatingVector ratings = users.get(raters.idAt(i));
+                for (int j = 0; j < ratings.size(); j++) {
+                    int column = Arrays.binarySearch(filmIds, ratings.idAt(j));
+                    if (column == row || column < 0) {
+                        continue;
+                    }
+                    if (dots[column] == 0) {
+                        touched[touchedCount++] = column;
+                    }
+                    dots[column] += deviation * (ratings.markAt(j) - NEUTRAL_MARK);
+                    if (dots[column] == 0) {
+                        // Нулевая сумма не должна повторно попасть в список затронутых.
+                        dots[column] = Double.MIN_VALUE;
+                    }
+                }
+            }
+
+            TopScores top = new TopScores(neighbourCount);
+            for (int i = 0; i < touchedCount; i++) {
+                int column = touched[i];
+                double similarity = dots[column] / (norms[row] * norms[column]);
+                if (similarity > 0) {
+                    top.offer(filmIds[column], (float) similarity);
+                }
+                dots[column] = 0;
+            }
+            computed.put(filmId, new Neighbours(top.getIds(), top.getScores()));
+        }
+        return computed;
+    }
+
+    private static class Neighbours {
+        final long[] filmIds;
+        final float[] similarities;
+
+        Neighbours(long[] filmIds, float[] similarities) {
+            this.filmIds = filmIds;
+            this.similarities = similarities;
+        }
+    }
+}
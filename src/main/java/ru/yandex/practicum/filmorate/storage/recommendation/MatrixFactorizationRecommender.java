@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * Рекомендации по факторной модели, обученной ALS на оценках film_likes. Модель переобучается по расписанию;
+ * факторы пользователя при запросе пересчитываются по его текущим оценкам, поэтому свежие оценки
+ * учитываются без переобучения. Рекомендуются фильмы с предсказанной оценкой не ниже положительной.
+ */
+@Component
+@Slf4j
+public class MatrixFactorizationRecommender {
+    private final JdbcTemplate jdbcTemplate;
+    private final AlsTrainer trainer;
+    private final boolean enabled;
+    private volatile Snapshot snapshot;
+
+    public MatrixFactorizationRecommender(
+            JdbcTemplate jdbcTemplate,
+            @Value("${filmorate.recommendation.strategy:ITEM_BASED}") RecommendationStrategy strategy,
+            @Value("${filmorate.recommendation.mf.factors:16}") int factors,
+            @Value("${filmorate.recommendation.mf.iterations:10}") int iterations,
+            @Value("${filmorate.recommendation.mf.regularization:0.05}") float regularization,
+            @Value("${filmorate.recommendation.mf.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.trainer = new AlsTrainer(factors, iterations, regularization, parallelism);
+        this.enabled = strategy == RecommendationStrategy.MATRIX_FACTORIZATION;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            train();
+        }
+    }
+
+    @Scheduled(cron = "${filmorate.recommendation.mf.train-cron:0 45 4 * * *}")
+    public void scheduledTrain() {
+        if (enabled) {
+            train();
+        }
+    }
+
+    public void train() {
+        long start = System.nanoTime();
+        Map<Long, Integer> userIndex = new HashMap<>();
+        List<long[]> likes = new ArrayList<>();
+        jdbcTemplate.query("select film_id, user_id, mark from film_likes", resultSet -> {
+            likes.add(new long[]{resultSet.getLong("film_id"), resultSet.getLong("user_id"),
+                    resultSet.getInt("mark")});
+        });
+        long[] filmIds = likes.stream().mapToLong(like -> like[0]).sorted().distinct().toArray();
+
+        int[] users = new int[likes.size()];
+        int[] items = new int[likes.size()];
+        float[] ratings = new float[likes.size()];
+        for (int j = 0; j < likes.size(); j++) {
+            long[] like = likes.get(j);
+            items[j] = Arrays.binarySearch(filmIds, like[0]);
+            users[j] = userIndex.computeIfAbsent(like[1], id -> userIndex.size());
+            ratings[j] = like[2];
+        }
+        AlsModel model = trainer.train(userIndex.size(), filmIds.length, users, items, ratings);
+        snapshot = new Snapshot(model, filmIds);
+
+        double squaredError = 0;
+        for (int j = 0; j < ratings.length; j++) {
+            double error = model.predict(users[j], items[j]) - ratings[j];
+            squaredError += error * error;
+        }
+        log.info("Факторная модель обучена за " + (System.nanoTime() - start) / 1_000_000 + " мс, оценок: "
+                + ratings.length + ", RMSE на обучении: "
+                + (ratings.length == 0 ? 0 : Math.sqrt(squaredError / ratings.length)));
+    }
+
+    /**
+     * До count фильмов с наибольшей предсказанной оценкой среди не оценённых пользователем.
+     */
+    public List<Long> recommend(Map<Long, Integer> ratings, int count) {
+        Snapshot current = snapshot;
+        if (current == null || ratings.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] items = new int[ratings.size()];
+        float[] values = new float[ratings.size()];
+        int known = 0;
+        for (Map.Entry<Long, Integer> rating : ratings.entrySet()) {
+            int item = Arrays.binarySearch(current.filmIds, rating.getKey());
+            if (item >= 0) {
+                items[known] = item;
+                values[known++] = rating.getValue();
+            }
+        }
+        if (known == 0) {
+            return Collections.emptyList();
+        }
+        float[] userVector = current.model.foldIn(Arrays.copyOf(items, known), Arrays.copyOf(values, known));
+
+        TopScores top = new TopScores(count);
+        for (int item = 0; item < current.filmIds.length; item++) {
+            float predicted = current.model.predict(userVector, item);
+            if (predicted >= FilmCooccurrenceMatrix.MIN_POSITIVE_MARK && !ratings.containsKey(current.filmIds[item])) {
+                top.offer(current.filmIds[item], predicted);
+            }
+        }
+        List<Long> recommended = new ArrayList<>();
+        for (long filmId : top.getIds()) {
+            recommended.add(filmId);
+        }
+        return recommended;
+    }
+
+    private static class Snapshot {
+        final AlsModel model;
+        final long[] filmIds;
+
+        Snapshot(AlsModel model, long[] filmIds) {
+            this.model = model;
+            this.filmIds = filmIds;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import java.util.Arrays;
+
+/**
+ * Разреженный вектор оценок: отсортированные id и оценки в параллельных массивах.
+ */
+class RatingVector {
+    private long[] ids = new long[4];
+    private byte[] marks = new byte[4];
+    private int size;
+
+    void put(long id, int mark) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            marks[index] = (byte) mark;
+            return;
+        }
+        index = -index - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            marks = Arrays.copyOf(marks, size * 2);
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        System.arraycopy(marks, index, marks, index + 1, size - index);
+        ids[index] = id;
+        marks[index] = (byte) mark;
+        size++;
+    }
+
+    void remove(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        System.arraycopy(marks, index + 1, marks, index, size - index - 1);
+        size--;
+    }
+
+    /**
+     * Оценка по id или 0, если оценки нет.
+     */
+    int get(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        return index < 0 ? 0 : marks[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long idAt(int index) {
+        return ids[index];
+    }
+
+    int markAt(int index) {
+        return marks[index];
+    }
+}
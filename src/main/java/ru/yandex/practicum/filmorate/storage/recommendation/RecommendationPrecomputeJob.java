@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.PrecomputeStats;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikedFilmsIndex;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заранее считает рекомендации для пользователей, у которых были события за последние active-days дней,
+ * и складывает их в user_recommendations. Пользователи делятся на части по batch-size и считаются в ForkJoinPool,
+ * каждая часть записывается одним пакетом. Строки пользователей, не попавших в прогон, удаляются.
+ * Если пользователь изменил оценки, пока считалась его часть, его строки после записи удаляются:
+ * собственное удаление в addLike могло пройти раньше вставки и не застать их.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RecommendationPrecomputeJob {
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmDbStorage filmStorage;
+    private final LikedFilmsIndex likedFilmsIndex;
+    private final AtomicInteger processedUsers = new AtomicInteger();
+    private final AtomicLong writtenRows = new AtomicLong();
+    private volatile boolean running;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile int totalUsers;
+
+    @Value("${filmorate.recommendation.precompute.active-days:30}")
+    private int activeDays;
+    @Value("${filmorate.recommendation.precompute.batch-size:200}")
+    private int batchSize;
+    @Value("${filmorate.recommendation.precompute.parallelism:0}")
+    private int parallelism;
+
+    @Scheduled(cron = "${filmorate.recommendation.precompute.cron:0 0 5 * * *}")
+    public synchronized void run() {
+        Instant start = Instant.now();
+        long[] userIds = jdbcTemplate.queryForList("select distinct user_id from events " +
+                        "where timestamp >= ? and user_id is not null", Long.class,
+                Timestamp.from(start.minus(Duration.ofDays(activeDays)))).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+
+        processedUsers.set(0);
+        writtenRows.set(0);
+        totalUsers = userIds.length;
+        startedAt = start;
+        finishedAt = null;
+        running = true;
+        ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : new ForkJoinPool();
+        try {
+            pool.invoke(new PrecomputeTask(userIds, 0, userIds.length));
+            jdbcTemplate.update("delete from user_recommendations where computed_at < ?", Timestamp.from(start));
+        } finally {
+            pool.shutdown();
+            finishedAt = Instant.now();
+            running = false;
+        }
+        PrecomputeStats stats = getStats();
+        log.info("Рекомендации посчитаны для " + stats.getProcessedUsers() + " пользователей за "
+                + stats.getDurationMillis() + " мс, строк: " + stats.getWrittenRows()
+                + ", пользователей в секунду: " + Math.round(stats.getUsersPerSecond()));
+    }
+
+    public PrecomputeStats getStats() {
+        Instant start = startedAt;
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        return PrecomputeStats.builder()
+                .running(running)
+                .startedAt(start)
+                .finishedAt(finishedAt)
+                .totalUsers(totalUsers)
+                .processedUsers(processedUsers.get())
+                .writtenRows(writtenRows.get())
+                .durationMillis(start == null ? 0 : Duration.between(start, end).toMillis())
+                .build();
+    }
+
+    private void precompute(long[] userIds) {
+        Timestamp computedAt = Timestamp.from(Instant.now());
+        List<Object[]> deletes = new ArrayList<>(userIds.length);
+        List<Object[]> rows = new ArrayList<>();
+        long[] versions = new long[userIds.length];
+        int[] rowCounts = new int[userIds.length];
+        for (int i = 0; i < userIds.length; i++) {
+            long userId = userIds[i];
+            deletes.add(new Object[]{userId});
+            versions[i] = likedFilmsIndex.getVersion(userId);
+            List<Long> filmIds = filmStorage.computeRecommendation(userId);
+            for (int position = 0; position < filmIds.size(); position++) {
+                rows.add(new Object[]{userId, position, filmIds.get(position), computedAt});
+            }
+            rowCounts[i] = filmIds.size();
+        }
+        jdbcTemplate.batchUpdate("delete from user_recommendations where user_id = ?", deletes);
+        jdbcTemplate.batchUpdate("insert into user_recommendations(user_id, position, film_id, computed_at) " +
+                "values(?, ?, ?, ?)", rows);
+
+        List<Object[]> changedUsers = new ArrayList<>();
+        int droppedRows = 0;
+        for (int i = 0; i < userIds.length; i++) {
+            if (likedFilmsIndex.getVersion(userIds[i]) != versions[i]) {
+                changedUsers.add(new Object[]{userIds[i]});
+                droppedRows += rowCounts[i];
+            }
+        }
+        if (!changedUsers.isEmpty()) {
+            jdbcTemplate.batchUpdate("delete from user_recommendations where user_id = ?", changedUsers);
+        }
+        writtenRows.addAndGet(rows.size() - droppedRows);
+        int processed = processedUsers.addAndGet(userIds.length);
+        log.debug("Рекомендации посчитаны для " + processed + " из " + totalUsers + " пользователей");
+    }
+
+    private class PrecomputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] userIds;
+        private final int from;
+        private final int to;
+
+        PrecomputeTask(long[] userIds, int from, int to) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                precompute(Arrays.copyOfRange(userIds, from, to));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PrecomputeTask(userIds, from, middle), new PrecomputeTask(userIds, middle, to));
+        }
+    }
+}
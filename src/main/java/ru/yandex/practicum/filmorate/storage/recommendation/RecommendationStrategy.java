@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+public enum RecommendationStrategy {
+    SQL,
+    ITEM_BASED,
+    COOCCURRENCE,
+    USER_BASED,
+    MATRIX_FACTORIZATION
+}
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import java.util.Arrays;
+
+/**
+ * Ограниченный список id с наибольшими оценками, отсортированный по убыванию оценки.
+ */
+class TopScores {
+    private final long[] ids;
+    private final float[] scores;
+    private int size;
+
+    TopScores(int capacity) {
+        ids = new long[capacity];
+        scores = new float[capacity];
+    }
+
+    void offer(long id, float score) {
+        if (ids.length == 0 || (size == ids.length && score <= scores[size - 1])) {
+            return;
+        }
+        int index = size == ids.length ? size - 1 : size++;
+        while (index > 0 && scores[index - 1] < score) {
+            ids[index] = ids[index - 1];
+            scores[index] = scores[index - 1];
+            index--;
+        }
+        ids[index] = id;
+        scores[index] = score;
+    }
+
+    long[] getIds() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    float[] getScores() {
+        return Arrays.copyOf(scores, size);
+    }
+}
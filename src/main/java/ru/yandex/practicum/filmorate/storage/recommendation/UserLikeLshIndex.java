@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Поиск пользователей с похожими положительными оценками через MinHash и LSH.
+ * Подпись пользователя — минимумы bands * rows хеш-функций по id понравившихся фильмов; подпись режется
+ * на полосы, и пользователи с совпавшей полосой попадают в одну корзину. Кандидаты — соседи по корзинам,
+ * их похожесть оценивается по доле совпавших минимумов или, при exact-rerank, точно по коэффициенту Жаккара.
+ */
+@Component
+@Slf4j
+public class UserLikeLshIndex {
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int bands;
+    private final int rows;
+    private final boolean exactRerank;
+    private final RecommendationStrategy recommendationStrategy;
+    private final long[] hashSeeds;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, long[]> likedFilms = new HashMap<>();
+    private final Map<Long, int[]> signatures = new HashMap<>();
+    private final List<Map<Long, Set<Long>>> buckets = new ArrayList<>();
+
+    public UserLikeLshIndex(JdbcTemplate jdbcTemplate,
+                            @Value("${filmorate.recommendation.lsh.bands:64}") int bands,
+                            @Value("${filmorate.recommendation.lsh.rows:2}") int rows,
+                            @Value("${filmorate.recommendation.lsh.exact-rerank:true}") boolean exactRerank,
+                            @Value("${filmorate.recommendation.strategy:ITEM_BASED}")
+                            RecommendationStrategy recommendationStrategy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bands = bands;
+        this.rows = rows;
+        this.exactRerank = exactRerank;
+        this.recommendationStrategy = recommendationStrategy;
+        this.hashSeeds = new Random(SEED).longs(bands * rows).toArray();
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        if (recommendationStrategy != RecommendationStrategy.USER_BASED) {
+            return;
+        }
+        Map<Long, List<Long>> loaded = new HashMap<>();
+        jdbcTemplate.query("select user_id, film_id from film_likes where mark >= ?", resultSet -> {
+            loaded.computeIfAbsent(resultSet.getLong("user_id"), id -> new ArrayList<>())
+                    .add(resultSet.getLong("film_id"));
+        }, FilmCooccurrenceMatrix.MIN_POSITIVE_MARK);
+
+        lock.writeLock().lock();
+        try {
+            likedFilms.clear();
+            signatures.clear();
+            buckets.forEach(Map::clear);
+            loaded.forEach((userId, films) -> update(userId,
+                    films.stream().mapToLong(Long::longValue).sorted().distinct().toArray()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("LSH-индекс пользователей построен, пользователей: " + loaded.size());
+    }
+
+    public void applyMark(long filmId, long userId, Integer oldMark, Integer newMark) {
+        boolean wasPositive = FilmCooccurrenceMatrix.isPositive(oldMark);
+        boolean positive = FilmCooccurrenceMatrix.isPositive(newMark);
+        if (wasPositive == positive) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long[] films = likedFilms.getOrDefault(userId, new long[0]);
+            int index = Arrays.binarySearch(films, filmId);
+            if (positive && index < 0) {
+                int insertAt = -index - 1;
+                long[] updated = new long[films.length + 1];
+                System.arraycopy(films, 0, updated, 0, insertAt);
+                updated[insertAt] = filmId;
+                System.arraycopy(films, insertAt, updated, insertAt + 1, films.length - insertAt);
+                update(userId, updated);
+            } else if (!positive && index >= 0) {
+                update(userId, without(films, index));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            List<Long> users = new ArrayList<>();
+            likedFilms.forEach((userId, films) -> {
+                if (Arrays.binarySearch(films, filmId) >= 0) {
+                    users.add(userId);
+                }
+            });
+            for (Long userId : users) {
+                long[] films = likedFilms.get(userId);
+                update(userId, without(films, Arrays.binarySearch(films, filmId)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            update(userId, new long[0]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long[] getLikedFilms(long userId) {
+        lock.readLock().lock();
+        try {
+            return likedFilms.getOrDefault(userId, new long[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * До count самых похожих пользователей, по убыванию похожести.
+     */
+    public List<UserSimilarity> findSimilarUsers(long userId, int count) {
+        lock.readLock().lock();
+        try {
+            int[] signature = signatures.get(userId);
+            if (signature == null) {
+                return Collections.emptyList();
+            }
+            Set<Long> candidates = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                candidates.addAll(buckets.get(band).getOrDefault(bandKey(signature, band), Collections.emptySet()));
+            }
+            candidates.remove(userId);
+
+            long[] films = likedFilms.get(userId);
+            List<UserSimilarity> similar = new ArrayList<>(candidates.size());
+            for (Long candidate : candidates) {
+                double similarity = exactRerank
+                        ? jaccard(films, likedFilms.get(candidate))
+                        : estimate(signature, signatures.get(candidate));
+                if (similarity > 0) {
+                    similar.add(new UserSimilarity(candidate, similarity));
+                }
+            }
+            similar.sort(Comparator.comparingDouble(UserSimilarity::getSimilarity).reversed()
+                    .thenComparingLong(UserSimilarity::getUserId));
+            return similar.size() > count ? new ArrayList<>(similar.subList(0, count)) : similar;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void update(long userId, long[] films) {
+        int[] oldSignature = signatures.get(userId);
+        int[] signature = films.length == 0 ? null : signature(films);
+        for (int band = 0; band < bands; band++) {
+            Long oldKey = oldSignature == null ? null : bandKey(oldSignature, band);
+            Long newKey = signature == null ? null : bandKey(signature, band);
+            if (Objects.equals(oldKey, newKey)) {
+                continue;
+            }
+            Map<Long, Set<Long>> bandBuckets = buckets.get(band);
+            if (oldKey != null) {
+                Set<Long> bucket = bandBuckets.get(oldKey);
+                bucket.remove(userId);
+                if (bucket.isEmpty()) {
+                    bandBuckets.remove(oldKey);
+                }
+            }
+            if (newKey != null) {
+                bandBuckets.computeIfAbsent(newKey, key -> new HashSet<>()).add(userId);
+            }
+        }
+        if (signature == null) {
+            likedFilms.remove(userId);
+            signatures.remove(userId);
+        } else {
+            likedFilms.put(userId, films);
+            signatures.put(userId, signature);
+        }
+    }
+
+    private int[] signature(long[] films) {
+        int[] signature = new int[hashSeeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long filmId : films) {
+            for (int i = 0; i < hashSeeds.length; i++) {
+                signature[i] = Math.min(signature[i], hash(filmId, hashSeeds[i]));
+            }
+        }
+        return signature;
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long key = 1;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[i];
+        }
+        return key;
+    }
+
+    private static int hash(long filmId, long seed) {
+        long h = (filmId ^ seed) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 31)) * 0x94D049BB133111EBL;
+        return (int) ((h ^ (h >>> 29)) >>> 33);
+    }
+
+    private static double estimate(int[] signature, int[] other) {
+        int equal = 0;
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] == other[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / signature.length;
+    }
+
+    private static double jaccard(long[] films, long[] other) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < films.length && j < other.length) {
+            if (films[i] == other[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (films[i] < other[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (films.length + other.length - common);
+    }
+
+    private static long[] without(long[] films, int index) {
+        long[] updated = new long[films.length - 1];
+        System.arraycopy(films, 0, updated, 0, index);
+        System.arraycopy(films, index + 1, updated, index, films.length - index - 1);
+        return updated;
+    }
+}
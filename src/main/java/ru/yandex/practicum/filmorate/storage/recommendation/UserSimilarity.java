@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.storage.recommendation;
+
+@lombok.Value
+public class UserSimilarity {
+    long userId;
+    double similarity;
+}
@@ -0,0 +1,226 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.recommendation.LongIntHashMap;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граф дружбы в памяти: для каждого пользователя хранится отсортированный массив id друзей
+ * (исходящие рёбра таблицы friends) и массив тех, у кого он в друзьях, — для удаления пользователя.
+ * При загрузке массивы нарезаются из одного упорядоченного прохода по таблице, как строки CSR-матрицы;
+ * при изменениях массив пользователя заменяется новым, поэтому выданные наружу массивы не меняются.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FriendGraph {
+    private static final long[] NO_USERS = new long[0];
+    private static final Comparator<MutualFriends> RANKING = Comparator
+            .comparingInt(MutualFriends::getCount).reversed()
+            .thenComparingLong(MutualFriends::getUserId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, long[]> friends = new HashMap<>();
+    private final Map<Long, long[]> followers = new HashMap<>();
+
+    @Value("${filmorate.friends.suggestions.max-fan-out:500}")
+    private int maxFanOut;
+
+    @PostConstruct
+    public void rebuild() {
+        List<long[]> edges = new ArrayList<>();
+        jdbcTemplate.query("select user_id, friend_id from friends order by user_id, friend_id", resultSet -> {
+            edges.add(new long[]{resultSet.getLong("user_id"), resultSet.getLong("friend_id")});
+        });
+        Map<Long, long[]> loadedFriends = slice(edges, 0, 1);
+        edges.sort(Comparator.<long[]>comparingLong(edge -> edge[1]).thenComparingLong(edge -> edge[0]));
+        Map<Long, long[]> loadedFollowers = slice(edges, 1, 0);
+
+        lock.writeLock().lock();
+        try {
+            friends.clear();
+            friends.putAll(loadedFriends);
+            followers.clear();
+            followers.putAll(loadedFollowers);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Граф дружбы построен, пользователей: " + loadedFriends.size() + ", связей: " + edges.size());
+    }
+
+    public void addFriend(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            friends.put(userId, with(friends.getOrDefault(userId, NO_USERS), friendId));
+            followers.put(friendId, with(followers.getOrDefault(friendId, NO_USERS), userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFriend(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            update(friends, userId, without(friends.getOrDefault(userId, NO_USERS), friendId));
+            update(followers, friendId, without(followers.getOrDefault(friendId, NO_USERS), userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            for (long friendId : friends.getOrDefault(userId, NO_USERS)) {
+                update(followers, friendId, without(followers.getOrDefault(friendId, NO_USERS), userId));
+            }
+            for (long followerId : followers.getOrDefault(userId, NO_USERS)) {
+                update(friends, followerId, without(friends.getOrDefault(followerId, NO_USERS), userId));
+            }
+            friends.remove(userId);
+            followers.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Отсортированные id друзей пользователя. Массив не изменяется и не должен изменяться вызывающим.
+     */
+    public long[] getFriends(long userId) {
+        lock.readLock().lock();
+        try {
+            return friends.getOrDefault(userId, NO_USERS);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Общие друзья — пересечение двух отсортированных массивов одним встречным проходом.
+     */
+    public long[] getCommonFriends(long userId, long otherId) {
+        long[] userFriends = getFriends(userId);
+        long[] otherFriends = getFriends(otherId);
+        long[] common = new long[Math.min(userFriends.length, otherFriends.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < userFriends.length && j < otherFriends.length) {
+            if (userFriends[i] == otherFriends[j]) {
+                common[count++] = userFriends[i];
+                i++;
+                j++;
+            } else if (userFriends[i] < otherFriends[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count == common.length ? common : Arrays.copyOf(common, count);
+    }
+
+    /**
+     * До count пользователей, которые есть в друзьях у друзей userId, но не у него самого, по убыванию
+     * числа общих друзей. Обход ограничен двумя шагами, и с каждого узла берётся не больше maxFanOut
+     * соседей, равномерно по массиву, так что пользователи с тысячами друзей не раздувают обход.
+     */
+    public List<MutualFriends> suggestFriends(long userId, int count) {
+        LongIntHashMap mutualCounts = new LongIntHashMap();
+        lock.readLock().lock();
+        try {
+            long[] userFriends = friends.getOrDefault(userId, NO_USERS);
+            int friendStep = step(userFriends.length);
+            for (int i = 0; i < userFriends.length; i += friendStep) {
+                long[] candidates = friends.getOrDefault(userFriends[i], NO_USERS);
+                int candidateStep = step(candidates.length);
+                for (int j = 0; j < candidates.length; j += candidateStep) {
+                    long candidate = candidates[j];
+                    if (candidate != userId && Arrays.binarySearch(userFriends, candidate) < 0) {
+                        mutualCounts.addTo(candidate, 1);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        PriorityQueue<MutualFriends> top = new PriorityQueue<>(RANKING.reversed());
+        mutualCounts.forEach((candidate, mutual) -> {
+            if (top.size() < count) {
+                top.add(new MutualFriends(candidate, mutual));
+            } else if (count > 0 && (mutual > top.peek().getCount()
+                    || mutual == top.peek().getCount() && candidate < top.peek().getUserId())) {
+                top.poll();
+                top.add(new MutualFriends(candidate, mutual));
+            }
+        });
+        List<MutualFriends> suggestions = new ArrayList<>(top);
+        suggestions.sort(RANKING);
+        return suggestions;
+    }
+
+    private int step(int degree) {
+        return degree <= maxFanOut ? 1 : (degree + maxFanOut - 1) / maxFanOut;
+    }
+
+    private static Map<Long, long[]> slice(List<long[]> edges, int from, int to) {
+        Map<Long, long[]> rows = new HashMap<>();
+        int start = 0;
+        while (start < edges.size()) {
+            long rowId = edges.get(start)[from];
+            int end = start;
+            while (end < edges.size() && edges.get(end)[from] == rowId) {
+                end++;
+            }
+            long[] row = new long[end - start];
+            for (int i = start; i < end; i++) {
+                row[i - start] = edges.get(i)[to];
+            }
+            rows.put(rowId, row);
+            start = end;
+        }
+        return rows;
+    }
+
+    private static void update(Map<Long, long[]> rows, long rowId, long[] row) {
+        if (row.length == 0) {
+            rows.remove(rowId);
+        } else {
+            rows.put(rowId, row);
+        }
+    }
+
+    private static long[] with(long[] row, long id) {
+        int index = Arrays.binarySearch(row, id);
+        if (index >= 0) {
+            return row;
+        }
+        int position = -index - 1;
+        long[] updated = new long[row.length + 1];
+        System.arraycopy(row, 0, updated, 0, position);
+        updated[position] = id;
+        System.arraycopy(row, position, updated, position + 1, row.length - position);
+        return updated;
+    }
+
+    private static long[] without(long[] row, long id) {
+        int index = Arrays.binarySearch(row, id);
+        if (index < 0) {
+            return row;
+        }
+        long[] updated = new long[row.length - 1];
+        System.arraycopy(row, 0, updated, 0, index);
+        System.arraycopy(row, index + 1, updated, index, row.length - index - 1);
+        return updated;
+    }
+}
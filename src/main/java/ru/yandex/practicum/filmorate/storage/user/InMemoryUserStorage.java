@@ -4,10 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Component("inMemoryUserStorage")
 @Slf4j
@@ -67,6 +69,15 @@ public class InMemoryUserStorage implements UserStorage {
         return users.values();
     }
 
+    @Override
+    public List<User> getUsers(long afterId, int limit) {
+        return users.values().stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public boolean userExist(Long id) {
         return users.containsKey(id);
@@ -110,6 +121,21 @@ public class InMemoryUserStorage implements UserStorage {
         return getUsersByIds(friendsId);
     }
 
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(Long id, int count) {
+        Set<Long> friendsId = getUserById(id).get().getFriends();
+        Map<Long, Integer> mutualCounts = new HashMap<>();
+        friendsId.forEach(friendId -> users.get(friendId).getFriends().stream()
+                .filter(candidate -> !candidate.equals(id) && !friendsId.contains(candidate))
+                .forEach(candidate -> mutualCounts.merge(candidate, 1, Integer::sum)));
+        return mutualCounts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(entry -> new FriendSuggestion(users.get(entry.getKey()), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void deleteUserById(Long id) {
     }
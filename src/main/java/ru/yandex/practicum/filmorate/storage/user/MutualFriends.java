@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+@lombok.Value
+public class MutualFriends {
+    long userId;
+    int count;
+}
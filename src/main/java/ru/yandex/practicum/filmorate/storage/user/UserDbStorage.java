@@ -3,28 +3,44 @@ package ru.yandex.practicum.filmorate.storage.user;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.event.EventManager;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Component("userDbStorage")
 @RequiredArgsConstructor
 @Slf4j
 public class UserDbStorage implements UserStorage {
+    private static final int HYDRATION_BATCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final EventManager eventManager;
+    private final FilmDbStorage filmStorage;
+    private final FriendGraph friendGraph;
 
     @Override
     public Optional<User> addUser(User user) {
@@ -97,6 +113,12 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sqlQuery, this::mapRowToUser);
     }
 
+    @Override
+    public List<User> getUsers(long afterId, int limit) {
+        String sqlQuery = "select * from users where user_id > ? order by user_id limit ?";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, afterId, limit);
+    }
+
     @Override
     public boolean userExist(Long id) {
         String sqlQuery = "select 1 from users where user_id = ? limit 1";
@@ -113,6 +135,7 @@ public class UserDbStorage implements UserStorage {
     public void addFriend(Long userId, Long friendId) {
         String sqlQuery = "merge into friends(user_id, friend_id, status) key(user_id, friend_id) values(?, ?, ?)";
         jdbcTemplate.update(sqlQuery, userId, friendId, 0);
+        friendGraph.addFriend(userId, friendId);
 
         eventManager.updateEvents(userId, EventType.FRIEND, Operation.ADD, friendId);
 
@@ -123,6 +146,7 @@ public class UserDbStorage implements UserStorage {
     public void removeFriend(Long userId, Long friendId) {
         String sqlQuery = "delete from friends where user_id = ? and friend_id = ?";
         jdbcTemplate.update(sqlQuery, userId, friendId);
+        friendGraph.removeFriend(userId, friendId);
 
         eventManager.updateEvents(userId, EventType.FRIEND, Operation.REMOVE, friendId);
 
@@ -137,29 +161,59 @@ public class UserDbStorage implements UserStorage {
                 "merge into friends(user_id, friend_id, status) key(user_id, friend_id) values(?, ?, ?)";
 
         jdbcTemplate.update(sqlQuery, 1, userId, friendId, friendId, userId, 1);
+        friendGraph.addFriend(friendId, userId);
         log.info("Пользователь с id " + userId + " подтвердил заявку в друзья от пользователя с id " + friendId);
     }
 
     @Override
     public Collection<User> getFriends(Long id) {
-        String sqlQuery = "select * from users where user_id in (select friend_id from friends where user_id = ?)";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, id);
+        return getUsersByIds(friendGraph.getFriends(id));
     }
 
     @Override
     public Collection<User> getCommonFriends(Long id, Long otherId) {
-        String sqlQuery = "select * from users where user_id in (" +
-                "select friends.friend_id from friends as friends " +
-                "inner join friends as other_friends " +
-                "on friends.friend_id = other_friends.friend_id " +
-                "where  friends.user_id = ? and other_friends.user_id = ?" +
-                ")";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, id, otherId);
+        return getUsersByIds(friendGraph.getCommonFriends(id, otherId));
+    }
+
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(Long id, int count) {
+        List<MutualFriends> suggestions = friendGraph.suggestFriends(id, count);
+        Map<Long, User> usersById = new HashMap<>();
+        getUsersByIds(suggestions.stream().mapToLong(MutualFriends::getUserId).toArray())
+                .forEach(user -> usersById.put(user.getId(), user));
+        return suggestions.stream()
+                .filter(suggestion -> usersById.containsKey(suggestion.getUserId()))
+                .map(suggestion -> new FriendSuggestion(usersById.get(suggestion.getUserId()), suggestion.getCount()))
+                .collect(Collectors.toList());
     }
 
     @Override
+    @Transactional
     public void deleteUserById(Long id) {
+        filmStorage.removeLikesOfUser(id);
         jdbcTemplate.update("delete from users where user_id = ?", id);
+        friendGraph.removeUser(id);
+    }
+
+    /**
+     * Пользователи в порядке ids, загруженные пачками по HYDRATION_BATCH_SIZE одним запросом на пачку.
+     */
+    private List<User> getUsersByIds(long[] ids) {
+        List<User> users = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += HYDRATION_BATCH_SIZE) {
+            List<Long> batch = Arrays.stream(ids, from, Math.min(ids.length, from + HYDRATION_BATCH_SIZE))
+                    .boxed()
+                    .collect(Collectors.toList());
+            Map<Long, User> usersById = new HashMap<>();
+            namedParameterJdbcTemplate.query("select * from users where user_id in (:ids)",
+                    new MapSqlParameterSource("ids", batch), this::mapRowToUser)
+                    .forEach(user -> usersById.put(user.getId(), user));
+            batch.stream()
+                    .map(usersById::get)
+                    .filter(Objects::nonNull)
+                    .forEach(users::add);
+        }
+        return users;
     }
 
     private Optional<User> getUserById(Long id) {
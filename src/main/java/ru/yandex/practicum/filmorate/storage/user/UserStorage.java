@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserStorage {
@@ -15,6 +17,8 @@ public interface UserStorage {
 
     Collection<User> getUsers();
 
+    List<User> getUsers(long afterId, int limit);
+
     boolean userExist(Long id);
 
     boolean userNotExist(Long id);
@@ -29,5 +33,7 @@ public interface UserStorage {
 
     Collection<User> getCommonFriends(Long id, Long otherId) throws ValidationException;
 
+    List<FriendSuggestion> getFriendSuggestions(Long id, int count);
+
     void deleteUserById(Long id);
 }
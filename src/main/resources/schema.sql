@@ -6,11 +6,14 @@ DROP TABLE IF EXISTS directors;
 
 DROP TABLE IF EXISTS events;
 
+DROP TABLE IF EXISTS user_recommendations;
+
 DROP TABLE IF EXISTS friends;
 
 DROP TABLE IF EXISTS review_useful;
 DROP TABLE IF EXISTS reviews;
 
+DROP TABLE IF EXISTS film_rating;
 DROP TABLE IF EXISTS film_likes;
 DROP TABLE IF EXISTS users;
 
@@ -32,6 +35,8 @@ CREATE TABLE IF NOT EXISTS films (
 	mpa_id INTEGER REFERENCES mpa (mpa_id)
 );
 
+CREATE INDEX IF NOT EXISTS idx_films_release_date ON films (release_date);
+
 CREATE TABLE IF NOT EXISTS users (
 	user_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	email VARCHAR,
@@ -51,6 +56,8 @@ CREATE TABLE IF NOT EXISTS film_genres (
 	CONSTRAINT PK_FILM_GENRES PRIMARY KEY (film_id,genre_id)
 );
 
+CREATE INDEX IF NOT EXISTS idx_film_genres_genre ON film_genres (genre_id, film_id);
+
 CREATE TABLE IF NOT EXISTS directors (
 	director_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	name VARCHAR
@@ -69,6 +76,16 @@ CREATE TABLE IF NOT EXISTS film_likes (
 	CONSTRAINT PK_FILM_LIKES PRIMARY KEY (film_id,user_id)
 );
 
+CREATE TABLE IF NOT EXISTS film_rating (
+	film_id BIGINT PRIMARY KEY REFERENCES films (film_id) ON DELETE CASCADE,
+	mark_sum BIGINT NOT NULL DEFAULT 0,
+	mark_count INTEGER NOT NULL DEFAULT 0,
+	avg_mark DOUBLE PRECISION GENERATED ALWAYS AS
+	    (CASE WHEN mark_count = 0 THEN NULL ELSE CAST(mark_sum AS DOUBLE PRECISION) / mark_count END)
+);
+
+CREATE INDEX IF NOT EXISTS idx_film_rating_rank ON film_rating (avg_mark DESC, mark_count DESC);
+
 CREATE TABLE IF NOT EXISTS friends (
 	user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
 	friend_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
@@ -98,4 +115,12 @@ CREATE TABLE IF NOT EXISTS events (
     event_type VARCHAR,
     operation VARCHAR,
     entity_id BIGINT
-);
\ No newline at end of file
+);
+
+CREATE TABLE IF NOT EXISTS user_recommendations (
+    user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
+    position INTEGER,
+    film_id BIGINT REFERENCES films (film_id) ON DELETE CASCADE,
+    computed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_USER_RECOMMENDATIONS PRIMARY KEY (user_id, position)
+);
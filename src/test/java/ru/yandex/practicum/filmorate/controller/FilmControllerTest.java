@@ -0,0 +1,169 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmControllerTest {
+    private final MockMvc mockMvc;
+    private final FilmDbStorage filmStorage;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+
+    @Test
+    public void testGetFilmsRejectsNonPositiveLimit() throws Exception {
+        mockMvc.perform(get("/films").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("limit", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetTrendingFilmsRejectsNonPositiveCount() throws Exception {
+        mockMvc.perform(get("/films/trending").param("count", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/trending").param("count", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetSuggestionsRejectsNonPositiveCount() throws Exception {
+        mockMvc.perform(get("/films/suggest").param("prefix", "Fi").param("count", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/suggest").param("prefix", "Fi").param("count", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetFilmsEmptyPageHasNoCursor() throws Exception {
+        Long filmId = filmStorage.addFilm(Film.builder()
+                        .name("Film")
+                        .description("Film description")
+                        .releaseDate(LocalDate.of(2000, 1, 1))
+                        .duration(60)
+                        .build())
+                .orElseThrow()
+                .getId();
+
+        mockMvc.perform(get("/films").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(filmId)));
+        mockMvc.perform(get("/films").param("after", String.valueOf(filmId)).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void testGetFilmsWithoutPaginationReturnsCursorAtCap() throws Exception {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            filmIds.add(filmStorage.addFilm(Film.builder()
+                            .name("Film " + i)
+                            .description("Film description")
+                            .releaseDate(LocalDate.of(2000, 1, 1))
+                            .duration(60)
+                            .build())
+                    .orElseThrow()
+                    .getId());
+        }
+        ReflectionTestUtils.setField(filmService, "unpaginatedCap", 2);
+
+        MvcResult result = mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(filmIds.get(1))))
+                .andReturn();
+        assertThat(objectMapper.readTree(result.getResponse().getContentAsString())).hasSize(2);
+
+        ReflectionTestUtils.setField(filmService, "unpaginatedCap", 4);
+        mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void testExportFilmsAcrossBatches() throws Exception {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 250; i++) {
+            filmIds.add(filmStorage.addFilm(Film.builder()
+                            .name("Film " + i)
+                            .description("Film description")
+                            .releaseDate(LocalDate.of(2000, 1, 1))
+                            .duration(60)
+                            .genres(Set.of(new Genre(1 + i % 6, "")))
+                            .build())
+                    .orElseThrow()
+                    .getId());
+        }
+
+        MvcResult started = mockMvc.perform(get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.parseMediaType("application/x-ndjson")))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertThat(body).endsWith("\n");
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(filmIds.size());
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode film = objectMapper.readTree(lines[i]);
+            assertThat(film.get("id").asLong()).isEqualTo(filmIds.get(i));
+            assertThat(film.get("genres")).hasSize(1);
+            assertThat(film.get("genres").get(0).get("id").asInt()).isEqualTo(1 + (i + 1) % 6);
+        }
+    }
+
+    @Test
+    public void testExportFilmsLimitsConcurrentExports() throws Exception {
+        filmService.acquireExport();
+        filmService.acquireExport();
+        try {
+            mockMvc.perform(get("/films/export"))
+                    .andExpect(status().is(503));
+        } finally {
+            filmService.releaseExport();
+            filmService.releaseExport();
+        }
+
+        MvcResult started = mockMvc.perform(get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class UserControllerTest {
+    private final MockMvc mockMvc;
+    private final UserDbStorage userStorage;
+    private final UserService userService;
+
+    @Test
+    public void testGetUsersRejectsNonPositiveLimit() throws Exception {
+        mockMvc.perform(get("/users").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users").param("limit", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetUsersEmptyPageHasNoCursor() throws Exception {
+        Long userId = userStorage.addUser(User.builder()
+                        .login("User")
+                        .email("user email")
+                        .name("User")
+                        .birthday(LocalDate.of(2000, 1, 1))
+                        .build())
+                .orElseThrow()
+                .getId();
+
+        mockMvc.perform(get("/users").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(userId)));
+        mockMvc.perform(get("/users").param("after", String.valueOf(userId)).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void testGetUsersWithoutPaginationReturnsCursorAtCap() throws Exception {
+        Long firstId = null;
+        for (int i = 1; i <= 2; i++) {
+            Long userId = userStorage.addUser(User.builder()
+                            .login("User" + i)
+                            .email("user email")
+                            .name("User")
+                            .birthday(LocalDate.of(2000, 1, 1))
+                            .build())
+                    .orElseThrow()
+                    .getId();
+            if (firstId == null) {
+                firstId = userId;
+            }
+        }
+        ReflectionTestUtils.setField(userService, "unpaginatedCap", 1);
+
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(firstId)));
+    }
+}
@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,9 +10,27 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.model.enums.SortType;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+import ru.yandex.practicum.filmorate.storage.bitmap.IdBitmap;
+import ru.yandex.practicum.filmorate.storage.cache.FilmSearchCache;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmHydrationMode;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmRatingRebuildJob;
+import ru.yandex.practicum.filmorate.storage.film.FilmSuggestIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmTrendingIndex;
+import ru.yandex.practicum.filmorate.storage.film.LikedFilmsIndex;
+import ru.yandex.practicum.filmorate.storage.recommendation.FilmCooccurrenceMatrix;
+import ru.yandex.practicum.filmorate.storage.recommendation.MatrixFactorizationRecommender;
+import ru.yandex.practicum.filmorate.storage.recommendation.RecommendationPrecomputeJob;
+import ru.yandex.practicum.filmorate.storage.recommendation.RecommendationStrategy;
+import ru.yandex.practicum.filmorate.storage.recommendation.UserLikeLshIndex;
+import ru.yandex.practicum.filmorate.storage.recommendation.UserSimilarity;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.io.File;
@@ -19,10 +39,20 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.api.Assertions.within;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -30,8 +60,20 @@ import static org.assertj.core.api.Assertions.assertThat;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class FilmDbStorageTest {
     private final FilmDbStorage filmStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmRatingRebuildJob ratingRebuildJob;
+    private final FilmSuggestIndex suggestIndex;
+    private final FilmTrendingIndex trendingIndex;
+    private final LikedFilmsIndex likedFilmsIndex;
+    private final FilmSearchCache searchCache;
+    private final FilmCooccurrenceMatrix cooccurrenceMatrix;
+    private final UserLikeLshIndex userLikeIndex;
+    private final RecommendationPrecomputeJob precomputeJob;
+    private final MatrixFactorizationRecommender matrixFactorizationRecommender;
     private final UserDbStorage userStorage;
     private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
     private static final String SQL_DATA_FILE = "src" + File.separator + "main" + File.separator + "resources" +
             File.separator + "data.sql";
 
@@ -339,6 +381,21 @@ public class FilmDbStorageTest {
                 .isNotEmpty();
     }
 
+    @Test
+    public void testGetFilmsPage() {
+        addFilms(3);
+
+        List<Film> firstPage = filmStorage.getFilms(0, 2);
+        assertThat(firstPage)
+                .extracting(Film::getId)
+                .containsExactly(1L, 2L);
+
+        List<Film> secondPage = filmStorage.getFilms(firstPage.get(1).getId(), 2);
+        assertThat(secondPage)
+                .extracting(Film::getId)
+                .containsExactly(3L);
+    }
+
     @Test
     public void testAddLike() {
         Film newFilm = Film.builder()
@@ -502,6 +559,675 @@ public class FilmDbStorageTest {
                 .hasFieldOrPropertyWithValue("id", optionalFilm2.get().getId());
     }
 
+    @Test
+    public void testGetPopularFilmsByGenreAndYear() {
+        Set<Genre> comedy = new HashSet<>();
+        comedy.add(new Genre(1, ""));
+        Set<Genre> drama = new HashSet<>();
+        drama.add(new Genre(2, ""));
+
+        Optional<Film> comedy2000 = filmStorage.addFilm(Film.builder()
+                .name("Comedy 2000")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .genres(comedy)
+                .duration(60)
+                .build());
+        Optional<Film> comedy2010 = filmStorage.addFilm(Film.builder()
+                .name("Comedy 2010")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2010, 1, 1))
+                .genres(comedy)
+                .duration(60)
+                .build());
+        Optional<Film> drama2000 = filmStorage.addFilm(Film.builder()
+                .name("Drama 2000")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .genres(drama)
+                .duration(60)
+                .build());
+        Optional<User> user = userStorage.addUser(User.builder()
+                .login("User")
+                .email("user email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+
+        assertThat(comedy2000).isPresent();
+        assertThat(comedy2010).isPresent();
+        assertThat(drama2000).isPresent();
+        assertThat(user).isPresent();
+
+        filmStorage.addLike(drama2000.get().getId(), user.get().getId(), 10);
+        filmStorage.addLike(comedy2010.get().getId(), user.get().getId(), 8);
+        filmStorage.addLike(comedy2000.get().getId(), user.get().getId(), 6);
+
+        assertThat(filmStorage.getPopularFilms(10, 1, 0))
+                .extracting(Film::getId)
+                .containsExactly(comedy2010.get().getId(), comedy2000.get().getId());
+        assertThat(filmStorage.getPopularFilms(10, 0, 2000))
+                .extracting(Film::getId)
+                .containsExactly(drama2000.get().getId(), comedy2000.get().getId());
+        assertThat(filmStorage.getPopularFilms(10, 1, 2000))
+                .extracting(Film::getId)
+                .containsExactly(comedy2000.get().getId());
+
+        filmStorage.deleteFilmById(comedy2010.get().getId());
+
+        assertThat(filmStorage.getPopularFilms(1, 1, 0))
+                .extracting(Film::getId)
+                .containsExactly(comedy2000.get().getId());
+    }
+
+    @Test
+    public void testHydrationStitchesBatches() {
+        int filmCount = 1_203;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= filmCount; i++) {
+            rows.add(new Object[]{"Film " + i, "Film description", java.sql.Date.valueOf("2000-01-01"), 60, 1});
+        }
+        jdbcTemplate.batchUpdate("insert into films(name, description, release_date, duration, mpa_id) " +
+                "values(?, ?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= 5; i++) {
+            rows.add(new Object[]{"user" + i, "user" + i, java.sql.Date.valueOf("2000-01-01")});
+        }
+        jdbcTemplate.batchUpdate("insert into users(email, login, birthday) values(?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= 10; i++) {
+            rows.add(new Object[]{"Director " + i});
+        }
+        jdbcTemplate.batchUpdate("insert into directors(name) values(?)", rows);
+
+        List<Object[]> genreRows = new ArrayList<>();
+        List<Object[]> directorRows = new ArrayList<>();
+        List<Object[]> likeRows = new ArrayList<>();
+        for (long filmId = 1; filmId <= filmCount; filmId++) {
+            if (filmId % 3 != 0) {
+                genreRows.add(new Object[]{filmId, expectedGenre(filmId)});
+            }
+            if (filmId % 4 == 0) {
+                directorRows.add(new Object[]{filmId, expectedDirector(filmId)});
+            }
+            if (filmId % 7 == 0) {
+                likeRows.add(new Object[]{filmId, expectedLike(filmId), 8});
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into film_genres(film_id, genre_id) values(?, ?)", genreRows);
+        jdbcTemplate.batchUpdate("insert into film_directors(film_id, director_id) values(?, ?)", directorRows);
+        jdbcTemplate.batchUpdate("insert into film_likes(film_id, user_id, mark) values(?, ?, ?)", likeRows);
+
+        for (FilmHydrationMode mode : FilmHydrationMode.values()) {
+            ReflectionTestUtils.setField(filmStorage, "hydrationMode", mode);
+            List<Film> films = filmStorage.getFilms(0, filmCount);
+
+            assertThat(films).hasSize(filmCount);
+            for (int i = 0; i < filmCount; i++) {
+                Film film = films.get(i);
+                long filmId = i + 1;
+                assertThat(film.getId()).isEqualTo(filmId);
+                if (filmId % 3 != 0) {
+                    assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(expectedGenre(filmId));
+                } else {
+                    assertThat(film.getGenres()).isNotNull().isEmpty();
+                }
+                if (filmId % 4 == 0) {
+                    assertThat(film.getDirectors()).extracting(Director::getId)
+                            .containsExactly(expectedDirector(filmId));
+                } else {
+                    assertThat(film.getDirectors()).isNotNull().isEmpty();
+                }
+                if (filmId % 7 == 0) {
+                    assertThat(film.getLikes()).containsExactly(expectedLike(filmId));
+                } else {
+                    assertThat(film.getLikes()).isNotNull().isEmpty();
+                }
+            }
+        }
+    }
+
+    private static int expectedGenre(long filmId) {
+        return 1 + (int) (filmId % 6);
+    }
+
+    private static long expectedDirector(long filmId) {
+        return 1 + filmId / 4 % 10;
+    }
+
+    private static long expectedLike(long filmId) {
+        return 1 + filmId % 5;
+    }
+
+    @Test
+    public void testGetPopularFilmsFiltersBeforeRanking() {
+        Random random = new Random(2023);
+        int filmCount = 5_000;
+        int userCount = 300;
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= filmCount; i++) {
+            rows.add(new Object[]{"Film " + i, "Film description",
+                    java.sql.Date.valueOf(LocalDate.of(1990 + random.nextInt(30), 1 + random.nextInt(12), 1)), 60, 1});
+        }
+        jdbcTemplate.batchUpdate("insert into films(name, description, release_date, duration, mpa_id) " +
+                "values(?, ?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= userCount; i++) {
+            rows.add(new Object[]{"user" + i, "user" + i, java.sql.Date.valueOf("2000-01-01")});
+        }
+        jdbcTemplate.batchUpdate("insert into users(email, login, birthday) values(?, ?, ?)", rows);
+
+        rows.clear();
+        for (long filmId = 1; filmId <= filmCount; filmId++) {
+            rows.add(new Object[]{filmId, 1 + random.nextInt(6)});
+        }
+        jdbcTemplate.batchUpdate("insert into film_genres(film_id, genre_id) values(?, ?)", rows);
+
+        rows.clear();
+        for (long userId = 1; userId <= userCount; userId++) {
+            for (int i = 0; i < 50; i++) {
+                rows.add(new Object[]{1L + random.nextInt(filmCount), userId, 1 + random.nextInt(10)});
+            }
+        }
+        jdbcTemplate.batchUpdate("merge into film_likes(film_id, user_id, mark) key(film_id, user_id) " +
+                "values(?, ?, ?)", rows);
+        ratingRebuildJob.rebuild();
+        popularityIndex.rebuild();
+
+        int[][] filters = {{0, 0}, {3, 0}, {0, 2005}, {5, 2012}};
+        for (int[] filter : filters) {
+            ReflectionTestUtils.setField(filmStorage, "popularityIndexEnabled", false);
+            List<Film> fromDatabase = new ArrayList<>(filmStorage.getPopularFilms(10, filter[0], filter[1]));
+            ReflectionTestUtils.setField(filmStorage, "popularityIndexEnabled", true);
+            List<Film> fromIndex = new ArrayList<>(filmStorage.getPopularFilms(10, filter[0], filter[1]));
+
+            assertThat(fromDatabase)
+                    .hasSize(10)
+                    .allSatisfy(film -> {
+                        if (filter[0] != 0) {
+                            assertThat(film.getGenres()).extracting(Genre::getId).contains(filter[0]);
+                        }
+                        if (filter[1] != 0) {
+                            assertThat(film.getReleaseDate().getYear()).isEqualTo(filter[1]);
+                        }
+                    });
+            assertThat(fromIndex)
+                    .extracting(Film::getId)
+                    .containsExactlyElementsOf(fromDatabase.stream().map(Film::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testGetFilmReadsOwnWrites() {
+        Optional<Film> optionalFilm = filmStorage.addFilm(Film.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<User> optionalUser = userStorage.addUser(User.builder()
+                .login("User")
+                .email("user email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        Optional<Director> optionalDirector = filmStorage.addDirector(Director.builder()
+                .name("Director")
+                .build());
+
+        assertThat(optionalFilm).isPresent();
+        assertThat(optionalUser).isPresent();
+        assertThat(optionalDirector).isPresent();
+
+        Long filmId = optionalFilm.get().getId();
+        Long userId = optionalUser.get().getId();
+        assertThat(filmStorage.getFilm(filmId))
+                .hasValueSatisfying(film -> assertThat(film.getLikes()).isEmpty());
+
+        filmStorage.addLike(filmId, userId, 8);
+        assertThat(filmStorage.getFilm(filmId))
+                .hasValueSatisfying(film -> assertThat(film.getLikes()).containsExactly(userId));
+
+        filmStorage.updateFilm(Film.builder()
+                .id(filmId)
+                .name("New film name")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .directors(Set.of(optionalDirector.get()))
+                .build());
+        assertThat(filmStorage.getFilm(filmId))
+                .hasValueSatisfying(film -> assertThat(film.getName()).isEqualTo("New film name"));
+
+        filmStorage.updateDirector(Director.builder()
+                .id(optionalDirector.get().getId())
+                .name("New director name")
+                .build());
+        assertThat(filmStorage.getFilm(filmId))
+                .hasValueSatisfying(film -> assertThat(film.getDirectors())
+                        .extracting(Director::getName)
+                        .containsExactly("New director name"));
+
+        filmStorage.removeLike(filmId, userId);
+        assertThat(filmStorage.getFilm(filmId))
+                .hasValueSatisfying(film -> assertThat(film.getLikes()).isEmpty());
+
+        filmStorage.deleteFilmById(filmId);
+        assertThat(filmStorage.getFilm(filmId)).isEmpty();
+    }
+
+    @Test
+    public void testSearchFilmsRanksByRelevanceThenRating() {
+        Optional<Film> substringFilm = filmStorage.addFilm(Film.builder()
+                .name("Pulpit")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<Film> wordFilm = filmStorage.addFilm(Film.builder()
+                .name("Pulp fiction")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<Film> exactFilm = filmStorage.addFilm(Film.builder()
+                .name("Pulp")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<User> optionalUser = userStorage.addUser(User.builder()
+                .login("User")
+                .email("user email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+
+        assertThat(substringFilm).isPresent();
+        assertThat(wordFilm).isPresent();
+        assertThat(exactFilm).isPresent();
+        assertThat(optionalUser).isPresent();
+
+        filmStorage.addLike(substringFilm.get().getId(), optionalUser.get().getId(), 10);
+
+        for (boolean indexEnabled : new boolean[]{true, false}) {
+            ReflectionTestUtils.setField(filmStorage, "searchIndexEnabled", indexEnabled);
+            searchCache.invalidateAll();
+
+            assertThat(filmStorage.searchFilms("PULP", List.of("title")))
+                    .extracting(Film::getId)
+                    .containsExactly(exactFilm.get().getId(), wordFilm.get().getId(), substringFilm.get().getId());
+            assertThat(filmStorage.searchFilms("%", List.of("title"))).isEmpty();
+            assertThat(filmStorage.searchFilms("') or 1=1 --", List.of("title", "director"))).isEmpty();
+        }
+    }
+
+    @Test
+    public void testSearchFilmsToleratesTypos() {
+        Optional<Director> optionalDirector = filmStorage.addDirector(Director.builder()
+                .name("Christopher Nolan")
+                .build());
+        assertThat(optionalDirector).isPresent();
+
+        Optional<Film> interstellar = filmStorage.addFilm(Film.builder()
+                .name("Interstellar")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2014, 1, 1))
+                .duration(169)
+                .directors(Set.of(optionalDirector.get()))
+                .build());
+        Optional<Film> shrek = filmStorage.addFilm(Film.builder()
+                .name("Shrek")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(90)
+                .build());
+        assertThat(interstellar).isPresent();
+        assertThat(shrek).isPresent();
+
+        assertThat(filmStorage.searchFilms("intersteller", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(interstellar.get().getId());
+        assertThat(filmStorage.searchFilms("nolna", List.of("director")))
+                .extracting(Film::getId)
+                .containsExactly(interstellar.get().getId());
+        assertThat(filmStorage.searchFilms("nolan", List.of("title"))).isEmpty();
+
+        filmStorage.updateDirector(Director.builder()
+                .id(optionalDirector.get().getId())
+                .name("Denis Villeneuve")
+                .build());
+        assertThat(filmStorage.searchFilms("villeneuve", List.of("director")))
+                .extracting(Film::getId)
+                .containsExactly(interstellar.get().getId());
+
+        filmStorage.deleteFilmById(interstellar.get().getId());
+        assertThat(filmStorage.searchFilms("interstellar", List.of("title"))).isEmpty();
+    }
+
+    @Test
+    public void testSearchFilmsCachesNormalizedQuery() {
+        Optional<Film> inception = filmStorage.addFilm(Film.builder()
+                .name("Inception")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2010, 1, 1))
+                .duration(148)
+                .build());
+        Optional<Film> interstellar = filmStorage.addFilm(Film.builder()
+                .name("Interstellar")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2014, 1, 1))
+                .duration(169)
+                .build());
+        Optional<Film> shrek = filmStorage.addFilm(Film.builder()
+                .name("Shrek")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(90)
+                .build());
+        Optional<User> optionalUser = userStorage.addUser(User.builder()
+                .login("User")
+                .email("user email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        assertThat(inception).isPresent();
+        assertThat(interstellar).isPresent();
+        assertThat(shrek).isPresent();
+        assertThat(optionalUser).isPresent();
+
+        filmStorage.addLike(inception.get().getId(), optionalUser.get().getId(), 9);
+        assertThat(filmStorage.searchFilms("IN", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(inception.get().getId(), interstellar.get().getId());
+        assertThat(filmStorage.searchFilms("in", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(inception.get().getId(), interstellar.get().getId());
+        assertThat(searchCache.getStats().getHits()).isEqualTo(1);
+
+        filmStorage.removeLike(inception.get().getId(), optionalUser.get().getId());
+        filmStorage.addLike(interstellar.get().getId(), optionalUser.get().getId(), 9);
+        assertThat(filmStorage.searchFilms("in", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(interstellar.get().getId(), inception.get().getId());
+        assertThat(searchCache.getStats().getHits()).isEqualTo(2);
+
+        filmStorage.updateFilm(Film.builder()
+                .id(shrek.get().getId())
+                .name("Shrek in Love")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2001, 1, 1))
+                .duration(90)
+                .build());
+        assertThat(filmStorage.searchFilms("in", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(shrek.get().getId(), interstellar.get().getId(), inception.get().getId());
+    }
+
+    @Test
+    public void testSearchCacheKeyIgnoresExtraWhitespace() {
+        Optional<Film> matrix = filmStorage.addFilm(Film.builder()
+                .name("The Matrix")
+                .description("Film description")
+                .releaseDate(LocalDate.of(1999, 1, 1))
+                .duration(136)
+                .build());
+        assertThat(matrix).isPresent();
+
+        assertThat(filmStorage.searchFilms("the matrix", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(matrix.get().getId());
+        assertThat(filmStorage.searchFilms("  The   MATRIX ", List.of("title")))
+                .extracting(Film::getId)
+                .containsExactly(matrix.get().getId());
+        assertThat(searchCache.getStats().getHits()).isEqualTo(1);
+        assertThat(searchCache.getStats().getSize()).isEqualTo(1);
+
+        searchCache.invalidateMatching(null, List.of("The  Matrix  Reloaded"), List.of());
+
+        assertThat(searchCache.getStats().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGetSuggestionsRankedByRating() {
+        Optional<Director> optionalDirector = filmStorage.addDirector(Director.builder()
+                .name("Christopher Nolan")
+                .build());
+        assertThat(optionalDirector).isPresent();
+
+        Optional<Film> darkKnight = filmStorage.addFilm(Film.builder()
+                .name("The Dark Knight")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2008, 1, 1))
+                .duration(152)
+                .directors(Set.of(optionalDirector.get()))
+                .build());
+        Optional<Film> darkCity = filmStorage.addFilm(Film.builder()
+                .name("Dark City")
+                .description("Film description")
+                .releaseDate(LocalDate.of(1998, 1, 1))
+                .duration(100)
+                .build());
+        Optional<User> optionalUser = userStorage.addUser(User.builder()
+                .login("User")
+                .email("user email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        assertThat(darkKnight).isPresent();
+        assertThat(darkCity).isPresent();
+        assertThat(optionalUser).isPresent();
+
+        filmStorage.addLike(darkKnight.get().getId(), optionalUser.get().getId(), 9);
+        filmStorage.addLike(darkCity.get().getId(), optionalUser.get().getId(), 7);
+        suggestIndex.refresh();
+
+        assertThat(filmStorage.getSuggestions("da", 10))
+                .extracting(Suggestion::getText)
+                .containsExactly("The Dark Knight", "Dark City");
+        assertThat(filmStorage.getSuggestions("DARK C", 10))
+                .extracting(Suggestion::getText)
+                .containsExactly("Dark City");
+        assertThat(filmStorage.getSuggestions("nol", 10))
+                .extracting(Suggestion::getType, Suggestion::getId)
+                .containsExactly(tuple(SuggestionType.DIRECTOR, optionalDirector.get().getId()));
+        assertThat(filmStorage.getSuggestions("dark", 1)).hasSize(1);
+        assertThat(filmStorage.getSuggestions("xyz", 10)).isEmpty();
+    }
+
+    @Test
+    public void testGetReferenceData() {
+        assertThat(filmStorage.getAllMpa())
+                .extracting(Mpa::getName)
+                .containsExactly("G", "PG", "PG-13", "R", "NC-17");
+        assertThat(filmStorage.getMpaById(3))
+                .hasValueSatisfying(mpa -> assertThat(mpa.getName()).isEqualTo("PG-13"));
+        assertThat(filmStorage.getMpaById(0)).isEmpty();
+        assertThat(filmStorage.getMpaById(6)).isEmpty();
+
+        assertThat(filmStorage.getAllGenres()).hasSize(6);
+        assertThat(filmStorage.getGenreById(2))
+                .hasValueSatisfying(genre -> assertThat(genre.getName()).isEqualTo("Драма"));
+        assertThat(filmStorage.getGenreById(7)).isEmpty();
+        assertThat(filmStorage.getReferenceDataVersion()).isNotBlank();
+    }
+
+    @Test
+    public void testGetTrendingFilms() {
+        Optional<Film> film1 = filmStorage.addFilm(Film.builder()
+                .name("Film1 name")
+                .description("Film1 description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<Film> film2 = filmStorage.addFilm(Film.builder()
+                .name("Film2 name")
+                .description("Film2 description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<User> user1 = userStorage.addUser(User.builder()
+                .login("User1")
+                .email("user1 email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        Optional<User> user2 = userStorage.addUser(User.builder()
+                .login("User2")
+                .email("user2 email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+
+        assertThat(film1).isPresent();
+        assertThat(film2).isPresent();
+        assertThat(user1).isPresent();
+        assertThat(user2).isPresent();
+
+        filmStorage.addLike(film1.get().getId(), user1.get().getId(), 10);
+        filmStorage.addLike(film2.get().getId(), user1.get().getId(), 10);
+        filmStorage.addLike(film2.get().getId(), user2.get().getId(), 10);
+
+        assertThat(filmStorage.getTrendingFilms(Duration.ofHours(24), 10))
+                .extracting(Film::getId)
+                .containsExactly(film2.get().getId(), film1.get().getId());
+        assertThat(filmStorage.getTrendingFilms(Duration.ofHours(24), 1))
+                .extracting(Film::getId)
+                .containsExactly(film2.get().getId());
+    }
+
+    @Test
+    public void testTrendingCountsFirstLikeOnly() {
+        List<Long> filmIds = addFilms(2);
+        List<Long> userIds = addUsers(3);
+        ReflectionTestUtils.setField(trendingIndex, "refreshInterval", Duration.ZERO);
+
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 10);
+        for (int mark = 1; mark <= 10; mark++) {
+            filmStorage.addLike(filmIds.get(1), userIds.get(2), mark);
+        }
+
+        assertThat(trendingIndex.getTop(Duration.ofHours(24), 10))
+                .containsExactly(filmIds.get(0), filmIds.get(1));
+
+        filmStorage.removeLike(filmIds.get(0), userIds.get(0));
+        filmStorage.removeLike(filmIds.get(0), userIds.get(1));
+
+        assertThat(trendingIndex.getTop(Duration.ofHours(24), 10))
+                .containsExactly(filmIds.get(1));
+
+        FilmTrendingIndex reloaded = new FilmTrendingIndex(jdbcTemplate);
+        ReflectionTestUtils.setField(reloaded, "halfLife", Duration.ofHours(6));
+        ReflectionTestUtils.setField(reloaded, "refreshInterval", Duration.ZERO);
+        reloaded.load();
+
+        assertThat(reloaded.getTop(Duration.ofHours(24), 10))
+                .containsExactly(filmIds.get(1));
+    }
+
+    @Test
+    public void testTrendingForgetsDeletedFilmsAndUsers() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(3);
+        ReflectionTestUtils.setField(trendingIndex, "refreshInterval", Duration.ZERO);
+        for (Long userId : userIds) {
+            filmStorage.addLike(filmIds.get(0), userId, 10);
+        }
+        filmStorage.addLike(filmIds.get(1), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 10);
+        filmStorage.addLike(filmIds.get(2), userIds.get(2), 10);
+
+        filmStorage.deleteFilmById(filmIds.get(0));
+
+        assertThat(filmStorage.getTrendingFilms(Duration.ofHours(24), 2))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(1), filmIds.get(2));
+
+        userStorage.deleteUserById(userIds.get(0));
+        userStorage.deleteUserById(userIds.get(1));
+
+        assertThat(trendingIndex.getTop(Duration.ofHours(24), 10)).containsExactly(filmIds.get(2));
+    }
+
+    @Test
+    public void testTrendingExpiresLikesWithTheirBucket() {
+        FilmTrendingIndex index = new FilmTrendingIndex(jdbcTemplate);
+        ReflectionTestUtils.setField(index, "halfLife", Duration.ofHours(6));
+        ReflectionTestUtils.setField(index, "refreshInterval", Duration.ZERO);
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+        ReflectionTestUtils.setField(index, "clock", Clock.fixed(start, ZoneOffset.UTC));
+        index.registerLike(1, 1);
+        index.registerLike(2, 1);
+        ReflectionTestUtils.setField(index, "clock", Clock.fixed(start.plus(Duration.ofHours(1)), ZoneOffset.UTC));
+        index.registerLike(2, 2);
+
+        assertThat(index.getTop(Duration.ofHours(24), 10)).containsExactly(2L, 1L);
+
+        ReflectionTestUtils.setField(index, "clock",
+                Clock.fixed(start.plus(FilmTrendingIndex.MAX_WINDOW), ZoneOffset.UTC));
+        index.registerLike(3, 3);
+
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(index, "likedAt")).hasSize(2);
+
+        index.unregisterLike(1, 1);
+        index.unregisterLike(2, 2);
+
+        assertThat(index.getTop(FilmTrendingIndex.MAX_WINDOW, 10)).containsExactly(3L);
+    }
+
+    @Test
+    public void testRolledBackLikeLeavesIndexesUnchanged() {
+        List<Long> filmIds = addFilms(2);
+        List<Long> userIds = addUsers(2);
+        ReflectionTestUtils.setField(trendingIndex, "refreshInterval", Duration.ZERO);
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 6);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            filmStorage.addLike(filmIds.get(0), userIds.get(0), 9);
+            filmStorage.addLike(filmIds.get(1), userIds.get(1), 10);
+            filmStorage.removeLike(filmIds.get(0), userIds.get(0));
+            status.setRollbackOnly();
+        });
+
+        assertThat(popularityIndex.getScore(filmIds.get(0)))
+                .hasValueSatisfying(score -> assertThat(score.getAverage()).isEqualTo(6.0));
+        assertThat(popularityIndex.getScore(filmIds.get(1)))
+                .hasValueSatisfying(score -> assertThat(score.hasMarks()).isFalse());
+        assertThat(trendingIndex.getTop(Duration.ofHours(24), 10)).containsExactly(filmIds.get(0));
+        assertThat(likedFilmsIndex.getLikedFilms(userIds.get(0))).containsExactly(filmIds.get(0));
+        assertThat(likedFilmsIndex.getLikedFilms(userIds.get(1))).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("select mark_sum from film_rating where film_id = ?",
+                Long.class, filmIds.get(0))).isEqualTo(6L);
+    }
+
+    @Test
+    public void testDeletingUserRemovesTheirLikesFromFilms() {
+        List<Long> filmIds = addFilms(2);
+        List<Long> userIds = addUsers(2);
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 4);
+        filmStorage.addLike(filmIds.get(1), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 8);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            userStorage.deleteUserById(userIds.get(0));
+            status.setRollbackOnly();
+        });
+
+        assertThat(popularityIndex.getScore(filmIds.get(0)))
+                .hasValueSatisfying(score -> assertThat(score.getAverage()).isEqualTo(6.0));
+        assertThat(likedFilmsIndex.getLikedFilms(userIds.get(0))).containsExactly(filmIds.get(0), filmIds.get(1));
+
+        userStorage.deleteUserById(userIds.get(0));
+
+        assertThat(popularityIndex.getScore(filmIds.get(0)))
+                .hasValueSatisfying(score -> assertThat(score.getAverage()).isEqualTo(8.0));
+        assertThat(popularityIndex.getScore(filmIds.get(1)))
+                .hasValueSatisfying(score -> assertThat(score.hasMarks()).isFalse());
+        assertThat(likedFilmsIndex.getLikedFilms(userIds.get(0))).isEmpty();
+        assertThat(filmStorage.getFilm(filmIds.get(0)))
+                .hasValueSatisfying(film -> assertThat(film.getLikes()).containsExactly(userIds.get(1)));
+        assertThat(filmStorage.countStaleFilmRatings()).isZero();
+    }
 
     @Test
     public void shouldGetFilmsWithTenPointRatingSystem() {
@@ -625,6 +1351,123 @@ public class FilmDbStorageTest {
                 .build();
     }
 
+    @Test
+    public void testFilmRatingFollowsLikes() {
+        Optional<Film> film = filmStorage.addFilm(Film.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<User> user1 = userStorage.addUser(User.builder()
+                .login("User1")
+                .email("user1 email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        Optional<User> user2 = userStorage.addUser(User.builder()
+                .login("User2")
+                .email("user2 email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+
+        assertThat(film).isPresent();
+        assertThat(user1).isPresent();
+        assertThat(user2).isPresent();
+
+        Long filmId = film.get().getId();
+        filmStorage.addLike(filmId, user1.get().getId(), 4);
+        filmStorage.addLike(filmId, user1.get().getId(), 8);
+        filmStorage.addLike(filmId, user2.get().getId(), 6);
+
+        assertThat(getFilmRating(filmId))
+                .containsEntry("MARK_SUM", 14L)
+                .containsEntry("MARK_COUNT", 2)
+                .containsEntry("AVG_MARK", 7.0);
+
+        filmStorage.removeLike(filmId, user2.get().getId());
+        userStorage.deleteUserById(user1.get().getId());
+
+        assertThat(getFilmRating(filmId))
+                .containsEntry("MARK_SUM", 0L)
+                .containsEntry("MARK_COUNT", 0);
+        assertThat(filmStorage.countStaleFilmRatings())
+                .isZero();
+    }
+
+    @Test
+    public void testRebuildFilmRatings() {
+        Optional<Film> film = filmStorage.addFilm(Film.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<User> user = userStorage.addUser(User.builder()
+                .login("User")
+                .email("user email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+
+        assertThat(film).isPresent();
+        assertThat(user).isPresent();
+
+        jdbcTemplate.update("insert into film_likes(film_id, user_id, mark) values(?, ?, ?)",
+                film.get().getId(), user.get().getId(), 9);
+
+        assertThat(filmStorage.countStaleFilmRatings())
+                .isEqualTo(1);
+
+        ratingRebuildJob.rebuild();
+
+        assertThat(filmStorage.countStaleFilmRatings())
+                .isZero();
+        assertThat(getFilmRating(film.get().getId()))
+                .containsEntry("MARK_SUM", 9L)
+                .containsEntry("MARK_COUNT", 1);
+        assertThat(popularityIndex.getScore(film.get().getId()))
+                .hasValueSatisfying(score -> assertThat(score.getAverage()).isEqualTo(9.0));
+    }
+
+    @Test
+    public void testRebuildFilmRatingsKeepsConcurrentLike() throws Exception {
+        List<Long> filmIds = addFilms(1);
+        List<Long> userIds = addUsers(2);
+        Long filmId = filmIds.get(0);
+        jdbcTemplate.update("insert into film_likes(film_id, user_id, mark) values(?, ?, ?)",
+                filmId, userIds.get(0), 9);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            Future<?> rebuild = transaction.execute(status -> {
+                filmStorage.addLike(filmId, userIds.get(1), 5);
+                Future<?> started = executor.submit(ratingRebuildJob::rebuild);
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return started;
+            });
+            rebuild.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(getFilmRating(filmId))
+                .containsEntry("MARK_SUM", 14L)
+                .containsEntry("MARK_COUNT", 2);
+        assertThat(filmStorage.countStaleFilmRatings())
+                .isZero();
+        assertThat(popularityIndex.getScore(filmId))
+                .hasValueSatisfying(score -> assertThat(score.getAverage()).isEqualTo(7.0));
+    }
+
+    private Map<String, Object> getFilmRating(Long filmId) {
+        return jdbcTemplate.queryForMap("select mark_sum, mark_count, avg_mark from film_rating where film_id = ?",
+                filmId);
+    }
+
     @Test
     public void testGetAllMpa() {
         Collection<Mpa> mpa = filmStorage.getAllMpa();
@@ -675,6 +1518,95 @@ public class FilmDbStorageTest {
                 .isEmpty();
     }
 
+    @Test
+    public void testFilmLikesAreBitmapsWithUnchangedJson() throws JsonProcessingException {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(2);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 8);
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 9);
+        filmStorage.addLike(filmIds.get(1), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 10);
+        filmStorage.addLike(filmIds.get(2), userIds.get(0), 7);
+
+        Optional<Film> film = filmStorage.getFilm(filmIds.get(0));
+        assertThat(film).isPresent();
+        assertThat(film.get().getLikes())
+                .isInstanceOf(IdBitmap.class)
+                .containsExactly(userIds.get(0), userIds.get(1));
+        assertThat(objectMapper.writeValueAsString(film.get()))
+                .contains("\"likes\":[" + userIds.get(0) + "," + userIds.get(1) + "]");
+        assertThat(filmStorage.getFilmLikes(filmIds.get(2))).containsExactly(userIds.get(0));
+
+        assertThat(filmStorage.getCommonFilms(userIds.get(0), userIds.get(1)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(1), filmIds.get(0));
+    }
+
+    @Test
+    public void testGetCommonFilmsForGroup() {
+        List<Long> filmIds = addFilms(4);
+        List<Long> userIds = addUsers(3);
+        for (Long userId : userIds) {
+            filmStorage.addLike(filmIds.get(0), userId, 6);
+            filmStorage.addLike(filmIds.get(1), userId, 9);
+            filmStorage.addLike(filmIds.get(2), userId, 8);
+        }
+        filmStorage.addLike(filmIds.get(3), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(3), userIds.get(1), 10);
+
+        assertThat(filmStorage.getCommonFilms(userIds))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(1), filmIds.get(2), filmIds.get(0));
+        assertThat(filmStorage.getCommonFilms(userIds.get(0), userIds.get(1)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(3), filmIds.get(1), filmIds.get(2), filmIds.get(0));
+
+        filmStorage.removeLike(filmIds.get(1), userIds.get(2));
+        filmStorage.deleteFilmById(filmIds.get(2));
+        assertThat(filmStorage.getCommonFilms(userIds))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(0));
+        assertThat(filmStorage.getRatedFilmIds(userIds.get(2))).containsExactly(filmIds.get(0));
+
+        ReflectionTestUtils.setField(filmStorage, "popularityIndexEnabled", false);
+        try {
+            assertThat(filmStorage.getCommonFilms(userIds.subList(0, 2)))
+                    .extracting(Film::getId)
+                    .containsExactly(filmIds.get(3), filmIds.get(1), filmIds.get(0));
+        } finally {
+            ReflectionTestUtils.setField(filmStorage, "popularityIndexEnabled", true);
+        }
+    }
+
+    @Test
+    public void testGetCompatibility() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(4);
+        int[][] marks = {{10, 8, 2}, {9, 7, 3}, {2, 4, 10}};
+        for (int user = 0; user < marks.length; user++) {
+            for (int film = 0; film < filmIds.size(); film++) {
+                filmStorage.addLike(filmIds.get(film), userIds.get(user), marks[user][film]);
+            }
+        }
+
+        TasteCompatibility similar = filmStorage.getCompatibility(userIds.get(0), userIds.get(1));
+        assertThat(similar.getSimilarity()).isGreaterThan(0.99);
+        assertThat(similar.getCommonFilms()).isEqualTo(3);
+        assertThat(filmStorage.getCompatibility(userIds.get(1), userIds.get(0)).getSimilarity())
+                .isEqualTo(similar.getSimilarity());
+        assertThat(filmStorage.getCompatibility(userIds.get(0), userIds.get(2)).getSimilarity())
+                .isCloseTo(-1.0, within(1e-9));
+        assertThat(filmStorage.getCompatibility(userIds.get(0), userIds.get(3)))
+                .extracting(TasteCompatibility::getSimilarity, TasteCompatibility::getCommonFilms)
+                .containsExactly(0.0, 0);
+
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 1);
+        assertThat(filmStorage.getCompatibility(userIds.get(0), userIds.get(1)).getSimilarity()).isNegative();
+
+        filmStorage.removeLike(filmIds.get(2), userIds.get(0));
+        assertThat(filmStorage.getCompatibility(userIds.get(1), userIds.get(0)).getCommonFilms()).isEqualTo(2);
+    }
+
     @Test
     public void testGetFilmsRecommendation() {
         //Film 1
@@ -773,4 +1705,231 @@ public class FilmDbStorageTest {
         assertThat(listFilms.get(0))
                 .hasFieldOrPropertyWithValue("id", optionalFilm2.get().getId());
     }
+
+    @Test
+    public void testGetFilmsRecommendationSkipsDissimilarFilms() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(3);
+
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 10);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 9);
+        filmStorage.addLike(filmIds.get(2), userIds.get(1), 2);
+        filmStorage.addLike(filmIds.get(0), userIds.get(2), 9);
+        filmStorage.addLike(filmIds.get(1), userIds.get(2), 8);
+
+        assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(1));
+
+        filmStorage.addLike(filmIds.get(2), userIds.get(1), 10);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 1);
+        filmStorage.addLike(filmIds.get(1), userIds.get(2), 1);
+        assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(2));
+    }
+
+    @Test
+    public void testCooccurrenceMatrixFollowsLikes() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(3);
+
+        setRecommendationStrategy(RecommendationStrategy.COOCCURRENCE);
+        try {
+            filmStorage.addLike(filmIds.get(0), userIds.get(0), 8);
+            filmStorage.addLike(filmIds.get(0), userIds.get(1), 9);
+            filmStorage.addLike(filmIds.get(1), userIds.get(1), 10);
+            filmStorage.addLike(filmIds.get(2), userIds.get(1), 3);
+            filmStorage.addLike(filmIds.get(0), userIds.get(2), 7);
+            filmStorage.addLike(filmIds.get(1), userIds.get(2), 6);
+            filmStorage.addLike(filmIds.get(2), userIds.get(2), 10);
+
+            assertThat(cooccurrenceMatrix.getCount(filmIds.get(0), filmIds.get(1))).isEqualTo(2);
+            assertThat(cooccurrenceMatrix.getCount(filmIds.get(0), filmIds.get(2))).isEqualTo(1);
+            assertThat(cooccurrenceMatrix.countMismatches()).isZero();
+
+            assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                    .extracting(Film::getId)
+                    .containsExactly(filmIds.get(1), filmIds.get(2));
+
+            filmStorage.addLike(filmIds.get(2), userIds.get(1), 9);
+            filmStorage.addLike(filmIds.get(1), userIds.get(2), 2);
+            filmStorage.removeLike(filmIds.get(0), userIds.get(0));
+            userStorage.deleteUserById(userIds.get(2));
+            assertThat(cooccurrenceMatrix.getCount(filmIds.get(0), filmIds.get(1))).isEqualTo(1);
+            assertThat(cooccurrenceMatrix.getCount(filmIds.get(1), filmIds.get(2))).isEqualTo(1);
+            assertThat(cooccurrenceMatrix.countMismatches()).isZero();
+
+            filmStorage.deleteFilmById(filmIds.get(1));
+            assertThat(cooccurrenceMatrix.getCount(filmIds.get(0), filmIds.get(1))).isZero();
+            assertThat(cooccurrenceMatrix.countMismatches()).isZero();
+        } finally {
+            setRecommendationStrategy(RecommendationStrategy.ITEM_BASED);
+        }
+    }
+
+    @Test
+    public void testCooccurrenceMatrixKeepsConcurrentLikesOfOneUser() throws Exception {
+        List<Long> filmIds = addFilms(200);
+        List<Long> userIds = addUsers(1);
+
+        setRecommendationStrategy(RecommendationStrategy.COOCCURRENCE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> likes = new ArrayList<>();
+            for (Long filmId : filmIds) {
+                likes.add(executor.submit(() -> filmStorage.addLike(filmId, userIds.get(0), 10)));
+            }
+            for (Future<?> like : likes) {
+                like.get();
+            }
+
+            assertThat(cooccurrenceMatrix.getCount(filmIds.get(0), filmIds.get(199))).isEqualTo(1);
+            assertThat(cooccurrenceMatrix.countMismatches()).isZero();
+        } finally {
+            executor.shutdown();
+            setRecommendationStrategy(RecommendationStrategy.ITEM_BASED);
+        }
+    }
+
+    @Test
+    public void testRecommendationModelsFollowSelectedStrategyOnly() {
+        List<Long> filmIds = addFilms(2);
+        List<Long> userIds = addUsers(2);
+
+        for (Long userId : userIds) {
+            filmStorage.addLike(filmIds.get(0), userId, 10);
+            filmStorage.addLike(filmIds.get(1), userId, 10);
+        }
+
+        assertThat(cooccurrenceMatrix.getCount(filmIds.get(0), filmIds.get(1))).isZero();
+        assertThat(userLikeIndex.findSimilarUsers(userIds.get(0), 10)).isEmpty();
+        assertThat(filmStorage.getFilmsRecommendation(userIds.get(0))).isEmpty();
+    }
+
+    @Test
+    public void testGetFilmsRecommendationFromSimilarUsers() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(3);
+
+        setRecommendationStrategy(RecommendationStrategy.USER_BASED);
+        try {
+            filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+            filmStorage.addLike(filmIds.get(0), userIds.get(1), 9);
+            filmStorage.addLike(filmIds.get(1), userIds.get(1), 8);
+            filmStorage.addLike(filmIds.get(2), userIds.get(2), 10);
+            filmStorage.addLike(filmIds.get(0), userIds.get(2), 2);
+
+            assertThat(userLikeIndex.findSimilarUsers(userIds.get(0), 10))
+                    .extracting(UserSimilarity::getUserId, UserSimilarity::getSimilarity)
+                    .containsExactly(tuple(userIds.get(1), 0.5));
+
+            assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                    .extracting(Film::getId)
+                    .containsExactly(filmIds.get(1));
+
+            filmStorage.removeLike(filmIds.get(0), userIds.get(1));
+            assertThat(filmStorage.getFilmsRecommendation(userIds.get(0))).isEmpty();
+
+            filmStorage.addLike(filmIds.get(0), userIds.get(2), 7);
+            assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                    .extracting(Film::getId)
+                    .containsExactly(filmIds.get(2));
+        } finally {
+            setRecommendationStrategy(RecommendationStrategy.ITEM_BASED);
+        }
+    }
+
+    @Test
+    public void testGetFilmsRecommendationFromMatrixFactorization() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(5);
+        for (Long userId : userIds.subList(1, userIds.size())) {
+            filmStorage.addLike(filmIds.get(0), userId, 10);
+            filmStorage.addLike(filmIds.get(1), userId, 9);
+            filmStorage.addLike(filmIds.get(2), userId, 2);
+        }
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+        matrixFactorizationRecommender.train();
+
+        ReflectionTestUtils.setField(filmStorage, "recommendationStrategy",
+                RecommendationStrategy.MATRIX_FACTORIZATION);
+        try {
+            assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                    .extracting(Film::getId)
+                    .containsExactly(filmIds.get(1));
+        } finally {
+            ReflectionTestUtils.setField(filmStorage, "recommendationStrategy", RecommendationStrategy.ITEM_BASED);
+        }
+    }
+
+    @Test
+    public void testPrecomputedRecommendationsAreReadFirst() {
+        List<Long> filmIds = addFilms(3);
+        List<Long> userIds = addUsers(2);
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 9);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 9);
+
+        precomputeJob.run();
+        assertThat(precomputeJob.getStats())
+                .hasFieldOrPropertyWithValue("running", false)
+                .hasFieldOrPropertyWithValue("totalUsers", 2)
+                .hasFieldOrPropertyWithValue("processedUsers", 2)
+                .hasFieldOrPropertyWithValue("writtenRows", 1L);
+        assertThat(jdbcTemplate.queryForList("select film_id from user_recommendations where user_id = ?",
+                Long.class, userIds.get(0))).containsExactly(filmIds.get(1));
+
+        jdbcTemplate.update("update user_recommendations set film_id = ? where user_id = ?",
+                filmIds.get(2), userIds.get(0));
+        assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(2));
+
+        jdbcTemplate.update("update user_recommendations set film_id = ? where user_id = ?",
+                filmIds.get(0), userIds.get(0));
+        assertThat(filmStorage.getPrecomputedRecommendation(userIds.get(0))).isEmpty();
+        assertThat(filmStorage.getFilmsRecommendation(userIds.get(0)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(1));
+
+        filmStorage.addLike(filmIds.get(1), userIds.get(0), 8);
+        assertThat(jdbcTemplate.queryForList("select film_id from user_recommendations where user_id = ?",
+                Long.class, userIds.get(0))).isEmpty();
+        assertThat(filmStorage.getFilmsRecommendation(userIds.get(0))).isEmpty();
+    }
+
+    private void setRecommendationStrategy(RecommendationStrategy strategy) {
+        ReflectionTestUtils.setField(filmStorage, "recommendationStrategy", strategy);
+    }
+
+    private List<Long> addFilms(int count) {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Optional<Film> optionalFilm = filmStorage.addFilm(Film.builder()
+                    .name("Film " + i)
+                    .description("Film description")
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(60)
+                    .build());
+            assertThat(optionalFilm).isPresent();
+            filmIds.add(optionalFilm.get().getId());
+        }
+        return filmIds;
+    }
+
+    private List<Long> addUsers(int count) {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Optional<User> optionalUser = userStorage.addUser(User.builder()
+                    .login("User" + i)
+                    .email("user " + i + " email")
+                    .birthday(LocalDate.of(2000, 1, 1))
+                    .build());
+            assertThat(optionalUser).isPresent();
+            userIds.add(optionalUser.get().getId());
+        }
+        return userIds;
+    }
 }
@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmHydrationMode;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmRatingRebuildJob;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+@Slf4j
+public class FilmHydrationBenchmarkTest {
+    private static final int FILMS = 2_000;
+    private static final int USERS = 500;
+    private static final int DIRECTORS = 100;
+    private static final int LIKES_PER_USER = 40;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    private final FilmDbStorage filmStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmRatingRebuildJob ratingRebuildJob;
+    private final FilmCache filmCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void beforeEachTest() {
+        Integer films = jdbcTemplate.queryForObject("select count(*) from films", Integer.class);
+        if (films != null && films >= FILMS) {
+            return;
+        }
+        Random random = new Random(42);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= FILMS; i++) {
+            rows.add(new Object[]{"Film " + i, "Description " + i,
+                    Date.valueOf(LocalDate.of(1950 + random.nextInt(70), 1 + random.nextInt(12), 1)),
+                    60 + random.nextInt(120), 1 + random.nextInt(5)});
+        }
+        jdbcTemplate.batchUpdate("insert into films(name, description, release_date, duration, mpa_id) " +
+                "values(?, ?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= USERS; i++) {
+            rows.add(new Object[]{"user" + i + "@mail.ru", "user" + i, "User " + i, Date.valueOf("1990-01-01")});
+        }
+        jdbcTemplate.batchUpdate("insert into users(email, login, name, birthday) values(?, ?, ?, ?)", rows);
+
+        rows.clear();
+        for (int i = 1; i <= DIRECTORS; i++) {
+            rows.add(new Object[]{"Director " + i});
+        }
+        jdbcTemplate.batchUpdate("insert into directors(name) values(?)", rows);
+
+        rows.clear();
+        List<Object[]> directorRows = new ArrayList<>();
+        for (long filmId = 1; filmId <= FILMS; filmId++) {
+            int firstGenre = 1 + random.nextInt(6);
+            rows.add(new Object[]{filmId, firstGenre});
+            rows.add(new Object[]{filmId, firstGenre % 6 + 1});
+            directorRows.add(new Object[]{filmId, 1L + random.nextInt(DIRECTORS)});
+        }
+        jdbcTemplate.batchUpdate("merge into film_genres(film_id, genre_id) key(film_id, genre_id) values(?, ?)", rows);
+        jdbcTemplate.batchUpdate("merge into film_directors(film_id, director_id) key(film_id, director_id) " +
+                "values(?, ?)", directorRows);
+
+        rows.clear();
+        for (long userId = 1; userId <= USERS; userId++) {
+            for (int i = 0; i < LIKES_PER_USER; i++) {
+                rows.add(new Object[]{1L + random.nextInt(FILMS), userId, 1 + random.nextInt(10)});
+            }
+        }
+        jdbcTemplate.batchUpdate("merge into film_likes(film_id, user_id, mark) key(film_id, user_id) " +
+                "values(?, ?, ?)", rows);
+        ratingRebuildJob.rebuild();
+        popularityIndex.rebuild();
+    }
+
+    @Test
+    public void compareHydrationModesOnGetFilm() {
+        Random random = new Random(7);
+        for (FilmHydrationMode mode : FilmHydrationMode.values()) {
+            ReflectionTestUtils.setField(filmStorage, "hydrationMode", mode);
+            report("getFilm(id)", mode, () -> {
+                long id = 1L + random.nextInt(FILMS);
+                filmCache.invalidate(id);
+                return filmStorage.getFilm(id).isPresent();
+            });
+        }
+    }
+
+    @Test
+    public void compareHydrationModesOnGetPopularFilms() {
+        for (FilmHydrationMode mode : FilmHydrationMode.values()) {
+            ReflectionTestUtils.setField(filmStorage, "hydrationMode", mode);
+            report("getPopularFilms(100)", mode, () -> !filmStorage.getPopularFilms(100, 0, 0).isEmpty());
+        }
+    }
+
+    private void report(String operation, FilmHydrationMode mode, Supplier<Boolean> call) {
+        for (int i = 0; i < WARMUP; i++) {
+            assertThat(call.get()).isTrue();
+        }
+
+        jdbcTemplate.execute("set query_statistics false");
+        jdbcTemplate.execute("set query_statistics true");
+        long[] latencies = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            call.get();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Long statements = jdbcTemplate.queryForObject(
+                "select sum(execution_count) from information_schema.query_statistics", Long.class);
+        jdbcTemplate.execute("set query_statistics false");
+
+        Arrays.sort(latencies);
+        log.info(String.format("%s [%s]: %.1f statements per call, p50 %.3f ms, p99 %.3f ms",
+                operation, mode,
+                statements == null ? 0 : (double) statements / ITERATIONS,
+                latencies[ITERATIONS / 2] / 1_000_000.0,
+                latencies[ITERATIONS * 99 / 100] / 1_000_000.0));
+    }
+}
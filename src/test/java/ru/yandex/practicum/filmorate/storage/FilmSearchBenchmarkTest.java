@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+@Slf4j
+public class FilmSearchBenchmarkTest {
+    private static final int FILMS = Integer.getInteger("filmorate.benchmark.films", 100_000);
+    private static final int DIRECTORS = 1_000;
+    private static final int BATCH = 10_000;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+    private static final String[] WORDS = {"dark", "night", "star", "love", "war", "city", "lost", "river",
+            "king", "dream", "blood", "shadow", "summer", "ghost", "iron", "silent"};
+
+    private final FilmDbStorage filmStorage;
+    private final FilmSearchIndex searchIndex;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void beforeEachTest() {
+        Integer films = jdbcTemplate.queryForObject("select count(*) from films", Integer.class);
+        if (films != null && films >= FILMS) {
+            return;
+        }
+        Random random = new Random(42);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= DIRECTORS; i++) {
+            rows.add(new Object[]{WORDS[random.nextInt(WORDS.length)] + " Director " + i});
+        }
+        jdbcTemplate.batchUpdate("insert into directors(name) values(?)", rows);
+
+        for (int from = 1; from <= FILMS; from += BATCH) {
+            rows.clear();
+            List<Object[]> directorRows = new ArrayList<>();
+            for (long filmId = from; filmId < from + BATCH && filmId <= FILMS; filmId++) {
+                String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] +
+                        " " + filmId;
+                rows.add(new Object[]{name, "Description", Date.valueOf("2000-01-01"), 90, 1});
+                directorRows.add(new Object[]{filmId, 1L + random.nextInt(DIRECTORS)});
+            }
+            jdbcTemplate.batchUpdate("insert into films(name, description, release_date, duration, mpa_id) " +
+                    "values(?, ?, ?, ?, ?)", rows);
+            jdbcTemplate.batchUpdate("insert into film_directors(film_id, director_id) values(?, ?)", directorRows);
+        }
+        jdbcTemplate.update("insert into film_rating(film_id) select film_id from films");
+        searchIndex.rebuild();
+    }
+
+    @Test
+    public void measureSearchLatency() {
+        for (boolean indexEnabled : new boolean[]{false, true}) {
+            ReflectionTestUtils.setField(filmStorage, "searchIndexEnabled", indexEnabled);
+            String source = indexEnabled ? "index" : "sql";
+            report(source, "word", "shadow", List.of("title", "director"));
+            report(source, "substring", "adow", List.of("title", "director"));
+            report(source, "rare", "silent iron 4242", List.of("title"));
+            report(source, "miss", "zzzz", List.of("title", "director"));
+        }
+        report("index", "typo", "shadwo sumer", List.of("title"));
+    }
+
+    private void report(String source, String label, String query, List<String> by) {
+        for (int i = 0; i < WARMUP; i++) {
+            filmStorage.searchFilms(query, by);
+        }
+        long[] latencies = new long[ITERATIONS];
+        int results = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            results = filmStorage.searchFilms(query, by).size();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        log.info(String.format("searchFilms [%s] %s '%s' on %d films: %d results, p50 %.3f ms, p99 %.3f ms",
+                source, label, query, FILMS, results,
+                latencies[ITERATIONS / 2] / 1_000_000.0,
+                latencies[ITERATIONS * 99 / 100] / 1_000_000.0));
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.storage.bitmap.IdBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+@Slf4j
+public class IdBitmapBenchmarkTest {
+    private static final int SETS = 10_000;
+    private static final int ID_RANGE = 100_000;
+
+    @Test
+    public void compareFootprint() {
+        measure("sparse likes (50 of 100k)", 50);
+        measure("popular films (2000 of 100k)", 2_000);
+        measure("dense block (8000 of 10k)", -8_000);
+    }
+
+    private void measure(String shape, int setSize) {
+        Random random = new Random(42);
+        long[][] ids = new long[SETS / (Math.abs(setSize) >= 2_000 ? 10 : 1)][];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = setSize > 0 ? randomIds(random, setSize, ID_RANGE) : randomIds(random, -setSize, 10_000);
+        }
+
+        List<Set<Long>> hashSets = new ArrayList<>();
+        long hashSetBytes = retainedBytes(() -> {
+            for (long[] row : ids) {
+                Set<Long> set = new HashSet<>();
+                for (long id : row) {
+                    set.add(id);
+                }
+                hashSets.add(set);
+            }
+            return hashSets;
+        });
+        List<IdBitmap> bitmaps = new ArrayList<>();
+        long bitmapBytes = retainedBytes(() -> {
+            for (long[] row : ids) {
+                IdBitmap bitmap = new IdBitmap();
+                for (long id : row) {
+                    bitmap.add(id);
+                }
+                bitmaps.add(bitmap);
+            }
+            return bitmaps;
+        });
+        long estimatedBytes = bitmaps.stream().mapToLong(IdBitmap::getSizeInBytes).sum();
+
+        for (int i = 0; i < ids.length; i++) {
+            assertThat(bitmaps.get(i)).isEqualTo(hashSets.get(i));
+        }
+
+        log.info(String.format("%s, %d sets: HashSet %.1f MB (%.1f B/id), IdBitmap %.1f MB (%.1f B/id, estimate %.1f MB)",
+                shape, ids.length,
+                hashSetBytes / 1048576.0, (double) hashSetBytes / ids.length / Math.abs(setSize),
+                bitmapBytes / 1048576.0, (double) bitmapBytes / ids.length / Math.abs(setSize),
+                estimatedBytes / 1048576.0));
+    }
+
+    private static long[] randomIds(Random random, int count, int range) {
+        Set<Long> ids = new HashSet<>();
+        while (ids.size() < count) {
+            ids.add(1L + random.nextInt(range));
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long retainedBytes(Supplier<Collection<?>> allocation) {
+        long before = usedMemory();
+        Collection<?> retained = allocation.get();
+        long after = usedMemory();
+        assertThat(retained).isNotEmpty();
+        return after - before;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.bitmap.IdBitmap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdBitmapTest {
+    private static final long KEY = 1 << 16;
+
+    @Test
+    public void testArrayContainerTurnsIntoBitmapAndBack() {
+        IdBitmap ids = new IdBitmap();
+        Set<Long> expected = new HashSet<>();
+        for (long id = 0; id < 4096; id++) {
+            assertThat(ids.add(id * 3)).isTrue();
+            expected.add(id * 3);
+        }
+        assertSameIds(ids, expected);
+
+        assertThat(ids.add(3L * 4096)).isTrue();
+        expected.add(3L * 4096);
+        assertThat(ids.add(3L * 4096)).isFalse();
+        assertSameIds(ids, expected);
+        long bitmapBytes = ids.getSizeInBytes();
+
+        for (long id = 4096; id > 2048; id--) {
+            assertThat(ids.remove(id * 3)).isTrue();
+            expected.remove(id * 3);
+        }
+        assertThat(ids.size()).isEqualTo(2049);
+        assertThat(ids.getSizeInBytes()).isEqualTo(bitmapBytes);
+        assertSameIds(ids, expected);
+
+        assertThat(ids.remove(3L * 2048)).isTrue();
+        expected.remove(3L * 2048);
+        assertThat(ids.remove(3L * 2048)).isFalse();
+        assertThat(ids.getSizeInBytes()).isEqualTo(bitmapBytes - 8192 + 2 * 2048);
+        assertSameIds(ids, expected);
+    }
+
+    @Test
+    public void testRandomChangesAcrossSeveralKeys() {
+        Random random = new Random(42);
+        IdBitmap ids = new IdBitmap();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long id = randomId(random);
+            if (random.nextInt(3) == 0) {
+                assertThat(ids.remove(id)).isEqualTo(expected.remove(id));
+            } else {
+                assertThat(ids.add(id)).isEqualTo(expected.add(id));
+            }
+        }
+        assertSameIds(ids, expected);
+
+        ids.removeIf(id -> id % 5 == 0);
+        expected.removeIf(id -> id % 5 == 0);
+        assertSameIds(ids, expected);
+        for (long id = 0; id < 5 * KEY; id += 7) {
+            assertThat(ids.contains(id)).isEqualTo(expected.contains(id));
+        }
+
+        ids.clear();
+        assertThat(ids).isEmpty();
+        assertThat(ids.iterator().hasNext()).isFalse();
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        Random random = new Random(7);
+        IdBitmap ids = new IdBitmap();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            long id = randomId(random);
+            ids.add(id);
+            expected.add(id);
+        }
+
+        Iterator<Long> iterator = ids.iterator();
+        List<Long> visited = new ArrayList<>();
+        while (iterator.hasNext()) {
+            long id = iterator.next();
+            visited.add(id);
+            if (id % 2 == 0) {
+                iterator.hasNext();
+                iterator.remove();
+                expected.remove(id);
+            }
+        }
+        assertThat(visited).containsExactlyElementsOf(new TreeSet<>(visited));
+        assertSameIds(ids, expected);
+    }
+
+    @Test
+    public void testIteratorRemoveAfterHasNextMovedToNextKey() {
+        IdBitmap ids = new IdBitmap(List.of(1L, 2L, KEY + 5));
+
+        Iterator<Long> iterator = ids.iterator();
+        assertThat(iterator.next()).isEqualTo(1L);
+        assertThat(iterator.next()).isEqualTo(2L);
+        assertThat(iterator.hasNext()).isTrue();
+        iterator.remove();
+        assertThat(iterator.next()).isEqualTo(KEY + 5);
+        assertThat(iterator.hasNext()).isFalse();
+
+        assertThat(ids).containsExactly(1L, KEY + 5);
+    }
+
+    @Test
+    public void testEqualsAndHashCodeMatchHashSet() {
+        Random random = new Random(11);
+        IdBitmap ids = new IdBitmap();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            long id = randomId(random);
+            ids.add(id);
+            expected.add(id);
+        }
+
+        assertThat(ids).isEqualTo(expected);
+        assertThat(expected).isEqualTo(ids);
+        assertThat(ids.hashCode()).isEqualTo(expected.hashCode());
+        assertThat(new IdBitmap(expected)).isEqualTo(ids);
+
+        expected.add(-1L);
+        assertThat(ids).isNotEqualTo(expected);
+    }
+
+    private static long randomId(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return random.nextInt(4096);
+            case 1:
+                return random.nextInt(5) * KEY + random.nextInt((int) KEY);
+            default:
+                return (1L << 40) + random.nextInt(3) * KEY + random.nextInt(10_000);
+        }
+    }
+
+    private static void assertSameIds(IdBitmap ids, Set<Long> expected) {
+        assertThat(ids.size()).isEqualTo(expected.size());
+        assertThat(ids).containsExactlyElementsOf(new TreeSet<>(expected));
+        for (Long id : expected) {
+            assertThat(ids.contains(id)).isTrue();
+        }
+    }
+}
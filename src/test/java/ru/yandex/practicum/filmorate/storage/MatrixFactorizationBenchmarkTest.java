@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.storage.recommendation.AlsModel;
+import ru.yandex.practicum.filmorate.storage.recommendation.AlsTrainer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+@EnabledIfSystemProperty(named = "filmorate.benchmark", matches = "true")
+@Slf4j
+public class MatrixFactorizationBenchmarkTest {
+    private static final int USERS = Integer.getInteger("filmorate.benchmark.users", 50_000);
+    private static final int FILMS = Integer.getInteger("filmorate.benchmark.films", 5_000);
+    private static final int MARKS_PER_USER = 50;
+    private static final int HIDDEN_FACTORS = 8;
+    private static final int TEST_EVERY = 10;
+
+    @Test
+    public void measureTraining() {
+        Random random = new Random(42);
+        double[][] userTaste = gaussian(random, USERS, HIDDEN_FACTORS);
+        double[][] filmTaste = gaussian(random, FILMS, HIDDEN_FACTORS);
+
+        int count = USERS * MARKS_PER_USER;
+        int testCount = (count + TEST_EVERY - 1) / TEST_EVERY;
+        int[] trainUsers = new int[count - testCount];
+        int[] trainFilms = new int[count - testCount];
+        float[] trainMarks = new float[count - testCount];
+        int[] testUsers = new int[testCount];
+        int[] testFilms = new int[testCount];
+        float[] testMarks = new float[testCount];
+        int j = 0;
+        for (int user = 0; user < USERS; user++) {
+            Set<Integer> rated = new HashSet<>();
+            while (rated.size() < MARKS_PER_USER) {
+                int film = random.nextInt(FILMS);
+                if (!rated.add(film)) {
+                    continue;
+                }
+                double taste = 0;
+                for (int f = 0; f < HIDDEN_FACTORS; f++) {
+                    taste += userTaste[user][f] * filmTaste[film][f];
+                }
+                float mark = Math.max(1, Math.min(10, Math.round(5.5 + 2 * taste + random.nextGaussian() * 0.5)));
+                if (j % TEST_EVERY == 0) {
+                    testUsers[j / TEST_EVERY] = user;
+                    testFilms[j / TEST_EVERY] = film;
+                    testMarks[j / TEST_EVERY] = mark;
+                } else {
+                    int index = j - j / TEST_EVERY - 1;
+                    trainUsers[index] = user;
+                    trainFilms[index] = film;
+                    trainMarks[index] = mark;
+                }
+                j++;
+            }
+        }
+
+        double mean = 0;
+        for (float mark : trainMarks) {
+            mean += mark;
+        }
+        mean /= trainMarks.length;
+        double baseline = 0;
+        for (float mark : testMarks) {
+            baseline += (mean - mark) * (mean - mark);
+        }
+        log.info(String.format("ALS on %d users x %d films, %d train / %d test marks, baseline RMSE %.3f",
+                USERS, FILMS, trainMarks.length, testMarks.length, Math.sqrt(baseline / testMarks.length)));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads : processors > 1 ? new int[]{1, processors} : new int[]{1}) {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            long start = System.nanoTime();
+            AlsModel model = new AlsTrainer(16, 10, 0.05f, threads)
+                    .train(USERS, FILMS, trainUsers, trainFilms, trainMarks);
+            long elapsed = System.nanoTime() - start;
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+            log.info(String.format("threads %d: training %.1f s, factors %.1f MB, heap delta %.1f MB, " +
+                            "RMSE train %.3f, test %.3f",
+                    threads, elapsed / 1e9, model.getFactorBytes() / 1048576.0,
+                    (heapAfter - heapBefore) / 1048576.0,
+                    rmse(model, trainUsers, trainFilms, trainMarks), rmse(model, testUsers, testFilms, testMarks)));
+        }
+    }
+
+    private static double rmse(AlsModel model, int[] users, int[] films, float[] marks) {
+        double squaredError = 0;
+        for (int i = 0; i < marks.length; i++) {
+            double error = model.predict(users[i], films[i]) - marks[i];
+            squaredError += error * error;
+        }
+        return Math.sqrt(squaredError / marks.length);
+    }
+
+    private static double[][] gaussian(Random random, int rows, int columns) {
+        double[][] values = new double[rows][columns];
+        for (double[] row : values) {
+            Arrays.setAll(row, i -> random.nextGaussian() * 0.5);
+        }
+        return values;
+    }
+}
@@ -5,21 +5,32 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.cache.RecommendationCache;
 import ru.yandex.practicum.filmorate.storage.event.EventManager;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -30,6 +41,10 @@ class UserDbStorageTest {
     private final FilmDbStorage filmStorage;
     private final ReviewDbStorage reviewDbStorage;
     private final EventManager eventManager;
+    private final UserService userService;
+    private final RecommendationCache recommendationCache;
+    private final FriendGraph friendGraph;
+    private final JdbcTemplate jdbcTemplate;
 
     @Test
     public void testAddUser() {
@@ -163,6 +178,27 @@ class UserDbStorageTest {
                 .isEqualTo(users.size() + 1);
     }
 
+    @Test
+    public void testGetUsersPage() {
+        for (int i = 1; i <= 3; i++) {
+            userStorage.addUser(User.builder()
+                    .login("User" + i)
+                    .email("user" + i + " email")
+                    .birthday(LocalDate.of(2000, 1, 1))
+                    .build());
+        }
+
+        List<User> firstPage = userStorage.getUsers(0, 2);
+        assertThat(firstPage)
+                .extracting(User::getId)
+                .containsExactly(1L, 2L);
+
+        List<User> secondPage = userStorage.getUsers(firstPage.get(1).getId(), 2);
+        assertThat(secondPage)
+                .extracting(User::getId)
+                .containsExactly(3L);
+    }
+
     @Test
     public void testAddFriend() {
         User user1 = User.builder()
@@ -329,6 +365,66 @@ class UserDbStorageTest {
                 .isEqualTo(1);
     }
 
+    @Test
+    public void testFriendGraphFollowsFriendships() {
+        List<Long> userIds = addUsers(4);
+
+        userStorage.addFriend(userIds.get(0), userIds.get(3));
+        userStorage.addFriend(userIds.get(0), userIds.get(1));
+        userStorage.addFriend(userIds.get(0), userIds.get(2));
+        userStorage.confirmFriend(userIds.get(0), userIds.get(1));
+        userStorage.addFriend(userIds.get(2), userIds.get(1));
+        userStorage.addFriend(userIds.get(2), userIds.get(3));
+
+        assertThat(userStorage.getFriends(userIds.get(0)))
+                .extracting(User::getId)
+                .containsExactly(userIds.get(1), userIds.get(2), userIds.get(3));
+        assertThat(userStorage.getFriends(userIds.get(1)))
+                .extracting(User::getId)
+                .containsExactly(userIds.get(0));
+        assertThat(userStorage.getCommonFriends(userIds.get(0), userIds.get(2)))
+                .extracting(User::getId)
+                .containsExactly(userIds.get(1), userIds.get(3));
+
+        userStorage.removeFriend(userIds.get(0), userIds.get(1));
+        assertThat(userStorage.getCommonFriends(userIds.get(0), userIds.get(2)))
+                .extracting(User::getId)
+                .containsExactly(userIds.get(3));
+
+        userStorage.deleteUserById(userIds.get(3));
+        assertThat(userStorage.getFriends(userIds.get(0)))
+                .extracting(User::getId)
+                .containsExactly(userIds.get(2));
+        assertThat(userStorage.getCommonFriends(userIds.get(0), userIds.get(2))).isEmpty();
+
+        long[] friendsBeforeRebuild = friendGraph.getFriends(userIds.get(2));
+        friendGraph.rebuild();
+        assertThat(friendGraph.getFriends(userIds.get(2))).containsExactly(friendsBeforeRebuild);
+    }
+
+    @Test
+    public void testGetFriendSuggestions() {
+        List<Long> userIds = addUsers(5);
+        userStorage.addFriend(userIds.get(0), userIds.get(1));
+        userStorage.addFriend(userIds.get(0), userIds.get(2));
+        userStorage.addFriend(userIds.get(1), userIds.get(0));
+        userStorage.addFriend(userIds.get(1), userIds.get(3));
+        userStorage.addFriend(userIds.get(1), userIds.get(4));
+        userStorage.addFriend(userIds.get(2), userIds.get(3));
+
+        assertThat(userStorage.getFriendSuggestions(userIds.get(0), 10))
+                .extracting(suggestion -> suggestion.getUser().getId(), FriendSuggestion::getMutualFriends)
+                .containsExactly(tuple(userIds.get(3), 2), tuple(userIds.get(4), 1));
+        assertThat(userStorage.getFriendSuggestions(userIds.get(0), 1))
+                .extracting(suggestion -> suggestion.getUser().getId())
+                .containsExactly(userIds.get(3));
+
+        ReflectionTestUtils.setField(friendGraph, "maxFanOut", 2);
+        assertThat(userStorage.getFriendSuggestions(userIds.get(0), 10))
+                .extracting(suggestion -> suggestion.getUser().getId(), FriendSuggestion::getMutualFriends)
+                .containsExactly(tuple(userIds.get(3), 1), tuple(userIds.get(4), 1));
+    }
+
     @Test
     public void testGetEvents() {
         User user1 = User.builder()
@@ -421,4 +517,159 @@ class UserDbStorageTest {
                 .size()
                 .isEqualTo(8);
     }
+
+    @Test
+    public void testGetFilmsRecommendationIsCachedPerUser() {
+        Optional<Film> film1 = filmStorage.addFilm(Film.builder()
+                .name("Film 1")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<Film> film2 = filmStorage.addFilm(Film.builder()
+                .name("Film 2")
+                .description("Film description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(60)
+                .build());
+        Optional<User> user1 = userStorage.addUser(User.builder()
+                .login("User1")
+                .email("user 1 email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        Optional<User> user2 = userStorage.addUser(User.builder()
+                .login("User2")
+                .email("user 2 email")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        assertThat(film1).isPresent();
+        assertThat(film2).isPresent();
+        assertThat(user1).isPresent();
+        assertThat(user2).isPresent();
+        long userId = user1.get().getId();
+
+        filmStorage.addLike(film1.get().getId(), userId, 10);
+        filmStorage.addLike(film1.get().getId(), user2.get().getId(), 9);
+        filmStorage.addLike(film2.get().getId(), user2.get().getId(), 9);
+
+        assertThat(userService.getFilmsRecommendation(userId))
+                .extracting(Film::getId)
+                .containsExactly(film2.get().getId());
+        assertThat(userService.getFilmsRecommendation(userId))
+                .extracting(Film::getId)
+                .containsExactly(film2.get().getId());
+        assertThat(recommendationCache.getStats().getHits()).isEqualTo(1);
+
+        filmStorage.addLike(film2.get().getId(), userId, 8);
+        assertThat(userService.getFilmsRecommendation(userId)).isEmpty();
+        assertThat(recommendationCache.getStats().getMisses()).isEqualTo(2);
+
+        filmStorage.removeLike(film1.get().getId(), user2.get().getId());
+        assertThat(recommendationCache.get(userId, id -> Optional.empty()))
+                .hasValueSatisfying(result -> assertThat(recommendationCache.isStale(result)).isTrue());
+    }
+
+    @Test
+    public void testPrecomputedRecommendationIsRefreshedFromCurrentMarks() throws InterruptedException {
+        List<Long> userIds = addUsers(2);
+        List<Long> filmIds = addFilms(3);
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 9);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 9);
+        jdbcTemplate.update("insert into user_recommendations(user_id, position, film_id) values(?, 0, ?)",
+                userIds.get(0), filmIds.get(2));
+
+        assertThat(userService.getFilmsRecommendation(userIds.get(0)))
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(2));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Collection<Film> films = userService.getFilmsRecommendation(userIds.get(0));
+        while (films.stream().noneMatch(film -> film.getId().equals(filmIds.get(1)))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            films = userService.getFilmsRecommendation(userIds.get(0));
+        }
+        assertThat(films)
+                .extracting(Film::getId)
+                .containsExactly(filmIds.get(1));
+    }
+
+    @Test
+    public void testGetFriendsShowsCompatibility() {
+        List<Long> userIds = addUsers(3);
+        List<Long> filmIds = addFilms(2);
+        filmStorage.addLike(filmIds.get(0), userIds.get(0), 10);
+        filmStorage.addLike(filmIds.get(1), userIds.get(0), 2);
+        filmStorage.addLike(filmIds.get(0), userIds.get(1), 9);
+        filmStorage.addLike(filmIds.get(1), userIds.get(1), 3);
+        userStorage.addFriend(userIds.get(0), userIds.get(1));
+        userStorage.addFriend(userIds.get(0), userIds.get(2));
+
+        assertThat(userService.getFriends(userIds.get(0)))
+                .extracting(User::getId, User::getCompatibility, User::getCommonFilms)
+                .containsExactly(
+                        tuple(userIds.get(1), filmStorage.getCompatibility(userIds.get(0), userIds.get(1))
+                                .getSimilarity(), 2),
+                        tuple(userIds.get(2), 0.0, 0));
+        assertThat(userStorage.getFriends(userIds.get(0)))
+                .extracting(User::getCompatibility)
+                .containsOnlyNulls();
+    }
+
+    @Test
+    public void testRecommendationRefreshRetriesAfterDroppedReload() throws InterruptedException {
+        RecommendationCache.Result stale = recommendationCache.get(1L, id -> Optional.of(
+                new RecommendationCache.Result(List.of(10L), List.of(10L), recommendationCache.now()))).orElseThrow();
+        recommendationCache.touchFilm(10L);
+        assertThat(recommendationCache.isStale(stale)).isTrue();
+
+        CountDownLatch dropped = new CountDownLatch(1);
+        recommendationCache.refreshInBackground(1L, stale, id -> {
+            recommendationCache.invalidate(2L);
+            dropped.countDown();
+            return Optional.of(new RecommendationCache.Result(List.of(11L), List.of(11L), recommendationCache.now()));
+        });
+        assertThat(dropped.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CountDownLatch reloaded = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (reloaded.getCount() > 0 && System.nanoTime() < deadline) {
+            recommendationCache.refreshInBackground(1L, stale, id -> {
+                reloaded.countDown();
+                return Optional.of(new RecommendationCache.Result(List.of(12L), List.of(12L), recommendationCache.now()));
+            });
+            reloaded.await(10, TimeUnit.MILLISECONDS);
+        }
+        assertThat(reloaded.getCount()).isZero();
+    }
+
+    private List<Long> addFilms(int count) {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Optional<Film> optionalFilm = filmStorage.addFilm(Film.builder()
+                    .name("Film " + i)
+                    .description("Film description")
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(60)
+                    .build());
+            assertThat(optionalFilm).isPresent();
+            filmIds.add(optionalFilm.get().getId());
+        }
+        return filmIds;
+    }
+
+    private List<Long> addUsers(int count) {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Optional<User> optionalUser = userStorage.addUser(User.builder()
+                    .login("User" + i)
+                    .email("UserMail")
+                    .birthday(LocalDate.of(2000, 1, 1))
+                    .build());
+            assertThat(optionalUser).isPresent();
+            userIds.add(optionalUser.get().getId());
+        }
+        return userIds;
+    }
 }